@@ -0,0 +1,95 @@
+package by.vdavdov.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Синтетические данные для бенчмарков: коды отчета и ответы регулятора
+ * в том же тройном вложении, что отдает regulator-ru-adapter.
+ * Данные детерминированы: одинаковый размер дает одинаковый набор.
+ */
+final class BenchmarkData {
+    private static final String GTIN = "0104610011500053";
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!%&()*+-./:;<=>?_";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param count количество кодов
+     * @return коды отчета вида 01GTIN21SERIAL&lt;GS&gt;93CHECK
+     */
+    static List<String> reportCodes(int count) {
+        SplittableRandom random = new SplittableRandom(count);
+        List<String> codes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            codes.add(GTIN + "21" + randomText(random, 13) + "\u001d93" + randomText(random, 4));
+        }
+        return codes;
+    }
+
+    /**
+     * Собирает ответ адаптера для переданных кодов: каждый {@code duplicateEvery}-й код
+     * помечен как повторное нанесение, остальные - Ok.
+     */
+    static String regulatorResponse(List<String> codes, int duplicateEvery) throws JsonProcessingException {
+        List<Map<String, Object>> cisList = new ArrayList<>(codes.size());
+        for (int i = 0; i < codes.size(); i++) {
+            String code = codes.get(i);
+            boolean duplicate = i % duplicateEvery == 0;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("cis", code.substring(0, code.indexOf('\u001d')));
+            entry.put("code", duplicate ? 1 : 0);
+            entry.put("description", duplicate ? "Повторное нанесение кода" : "Ok");
+            cisList.add(entry);
+        }
+        String innerJson = objectMapper.writeValueAsString(Map.of("cisList", cisList));
+        String message = "HTTP/1.1 200 OK\nServer: nginx\nContent-Type: application/json; charset=UTF-8\n"
+                + "Transfer-Encoding: chunked\nConnection: keep-alive\n\n"
+                + objectMapper.writeValueAsString(Map.of("content", innerJson));
+
+        Map<String, Object> adapterResponse = new LinkedHashMap<>();
+        adapterResponse.put("content", message);
+        adapterResponse.put("size", message.length());
+        return objectMapper.writeValueAsString(adapterResponse);
+    }
+
+    /**
+     * @param count количество отчетов на странице
+     * @return JSON страницы отклоненных отчетов
+     */
+    static String reportsPage(int count) throws JsonProcessingException {
+        SplittableRandom random = new SplittableRandom(count);
+        List<Map<String, Object>> content = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", randomText(random, 8) + "-" + randomText(random, 4) + "-" + randomText(random, 12));
+            item.put("status", "REJECTED");
+            item.put("rejectionReason", i % 2 == 0 ? "Повторное нанесение кода" : "Дубликат кода");
+            item.put("orderNumber", "ORD-" + random.nextInt(1_000_000));
+            item.put("updated", "2025-03-17T16:43:51.123Z");
+            content.add(item);
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("content", content);
+        page.put("totalPages", 1);
+        page.put("number", 0);
+        page.put("last", true);
+        return objectMapper.writeValueAsString(page);
+    }
+
+    private static String randomText(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
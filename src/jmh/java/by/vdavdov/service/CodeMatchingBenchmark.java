@@ -0,0 +1,48 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.CisEntry;
+import by.vdavdov.utils.CodeIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение индекса кодов отчета и сопоставление с ним записей ответа регулятора.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeMatchingBenchmark {
+
+    @Param({"100", "10000", "200000"})
+    public int codes;
+
+    private List<String> reportCodes;
+    private List<CisEntry> cisList;
+    private CodeIndex index;
+
+    @Setup
+    public void setUp() throws Exception {
+        reportCodes = BenchmarkData.reportCodes(codes);
+        cisList = new RegulatorResponseDecoder().decode(BenchmarkData.regulatorResponse(reportCodes, 10));
+        index = buildIndex();
+    }
+
+    @Benchmark
+    public CodeIndex buildIndex() {
+        CodeIndex.Builder builder = new CodeIndex.Builder();
+        for (String code : reportCodes) {
+            builder.add(code);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public List<String> matchCisList() {
+        return CheckReportsService.processCisList(cisList, index);
+    }
+}
@@ -0,0 +1,40 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.CisEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа регулятора: извлечение вложенного JSON и полный разбор cisList.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegulatorDecodingBenchmark {
+
+    @Param({"100", "10000", "200000"})
+    public int codes;
+
+    private final RegulatorResponseDecoder decoder = new RegulatorResponseDecoder();
+    private String response;
+
+    @Setup
+    public void setUp() throws Exception {
+        response = BenchmarkData.regulatorResponse(BenchmarkData.reportCodes(codes), 10);
+    }
+
+    @Benchmark
+    public String innerJson() {
+        return decoder.decodeInnerJson(response);
+    }
+
+    @Benchmark
+    public List<CisEntry> decode() {
+        return decoder.decode(response);
+    }
+}
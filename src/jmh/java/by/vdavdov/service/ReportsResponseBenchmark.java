@@ -0,0 +1,44 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ReportsResponse;
+import by.vdavdov.utils.JsonCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Десериализация страницы отклоненных отчетов: новый ObjectMapper с рефлексией
+ * против общего {@link JsonCodec} с кешированным читателем и Blackbird.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportsResponseBenchmark {
+
+    @Param({"50", "500"})
+    public int pageSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader codecReader = JsonCodec.reader(ReportsResponse.class);
+    private String page;
+
+    @Setup
+    public void setUp() throws Exception {
+        page = BenchmarkData.reportsPage(pageSize);
+    }
+
+    @Benchmark
+    public ReportsResponse deserialize() throws Exception {
+        return objectMapper.readValue(page, ReportsResponse.class);
+    }
+
+    @Benchmark
+    public ReportsResponse deserializeWithCodec() throws Exception {
+        return codecReader.readValue(page);
+    }
+}
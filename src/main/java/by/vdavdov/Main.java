@@ -1,5 +1,6 @@
 package by.vdavdov;
 
+import by.vdavdov.service.HttpTransport;
 import by.vdavdov.service.SchedulerService;
 import by.vdavdov.utils.YamlUtil;
 import org.apache.logging.log4j.LogManager;
@@ -15,6 +16,7 @@ public class Main {
         if (args.length == 0) {
             try {
                 YamlUtil.loadInternalConfig(); // или loadExternalConfig("путь/к/конфигу.yaml")
+                HttpTransport.configureKeepAlive();
                 SchedulerService scheduler = new SchedulerService();
                 scheduler.startScheduling();
                 log.info("Запущено со внутреннего конфига, тк аргументы не обнаружены");
@@ -28,6 +30,7 @@ public class Main {
                 System.exit(1);
             }
             YamlUtil.loadExternalConfig(path);
+            HttpTransport.configureKeepAlive();
             SchedulerService scheduler = new SchedulerService();
             scheduler.startScheduling();
             log.info("Шедулер запущен со внешнего конфига {}.", path);
@@ -3,23 +3,45 @@ package by.vdavdov.model;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 /**
  * Модель для парсинга.
+ * Время created разбирается один раз при чтении ответа и хранится в наносекундах эпохи
+ * (без потери точности Instant до 2262 года), чтобы сравнение попыток не разбирало строку заново.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Attempt {
-    @JsonProperty("created")
-    private String created;
+    private long createdNanos = Long.MIN_VALUE;
 
     @JsonProperty("responsePath")
     private String responsePath;
 
+    /**
+     * @return время создания попытки или null, если оно не пришло
+     */
     public Instant getCreated() {
-        return Instant.parse(created);
+        return createdNanos == Long.MIN_VALUE ? null : Instant.ofEpochSecond(0, createdNanos);
+    }
+
+    /**
+     * @return время создания в наносекундах эпохи или Long.MIN_VALUE, если оно не пришло
+     */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    @JsonProperty("created")
+    public void setCreated(String created) {
+        this.createdNanos = created == null ? Long.MIN_VALUE
+                : ChronoUnit.NANOS.between(Instant.EPOCH, Instant.parse(created));
     }
 
     public String getResponsePath() {
         return responsePath;
     }
-}
\ No newline at end of file
+
+    public void setResponsePath(String responsePath) {
+        this.responsePath = responsePath;
+    }
+}
@@ -0,0 +1,22 @@
+package by.vdavdov.model;
+
+/**
+ * Запись cisList из ответа регулятора.
+ */
+public class CisEntry {
+    private final String cis;
+    private final String description;
+
+    public CisEntry(String cis, String description) {
+        this.cis = cis;
+        this.description = description;
+    }
+
+    public String getCis() {
+        return cis;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
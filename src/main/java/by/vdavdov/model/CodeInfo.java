@@ -12,4 +12,6 @@ public class CodeInfo {
     private String code;
 
     public String getCode() { return code; }
+
+    public void setCode(String code) { this.code = code; }
 }
@@ -0,0 +1,23 @@
+package by.vdavdov.model;
+
+/**
+ * Этап обработки отчета в журнале работ.
+ */
+public enum ReportStage {
+    DISCOVERED,
+    CODES_REMOVED,
+    ACCEPTED,
+    RECALCULATED,
+    CANCELLED,
+    /**
+     * Автоматическая обработка невозможна, требуется ручная обработка.
+     */
+    MANUAL;
+
+    /**
+     * @return true, если по отчету больше нечего делать
+     */
+    public boolean isTerminal() {
+        return this == RECALCULATED || this == CANCELLED || this == MANUAL;
+    }
+}
@@ -12,10 +12,10 @@ import java.util.List;
 public class ReportsResponse {
     @JsonProperty("content")
     private List<ContentItem> content;
-//    @JsonProperty("totalPages")
-//    private int totalPages;
-//    @JsonProperty("number")
-//    private int number;
+    @JsonProperty("totalPages")
+    private int totalPages;
+    @JsonProperty("number")
+    private int number;
     @JsonProperty("last")
     private boolean last;
 
@@ -27,21 +27,21 @@ public class ReportsResponse {
         this.content = content;
     }
 
-//    public int getTotalPages() {
-//        return totalPages;
-//    }
-//
-//    public void setTotalPages(int totalPages) {
-//        this.totalPages = totalPages;
-//    }
-//
-//    public int getNumber() {
-//        return number;
-//    }
-//
-//    public void setNumber(int number) {
-//        this.number = number;
-//    }
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    public void setTotalPages(int totalPages) {
+        this.totalPages = totalPages;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public void setNumber(int number) {
+        this.number = number;
+    }
 
     public boolean isLast() {
         return last;
@@ -0,0 +1,78 @@
+package by.vdavdov.model;
+
+import java.nio.file.Path;
+
+/**
+ * Окружение или учетная запись, с которой работает сервис: хост, учетные данные,
+ * лимит параллельной обработки и каталог файлов состояния.
+ * Каждая цель обрабатывается своим CheckReportsService со своим HTTP-транспортом,
+ * кешем токена, журналом и временем последнего запуска.
+ */
+public class Target {
+    private final String name;
+    private final String host;
+    private final String login;
+    private final String password;
+    private final int concurrency;
+    private final Path stateDirectory;
+    private final boolean datasourceEnabled;
+
+    /**
+     * @param name              имя цели, используется в метках метрик и в логе событий
+     * @param host              адрес API
+     * @param login             логин для получения JWT
+     * @param password          пароль для получения JWT
+     * @param concurrency       сколько отчетов цели обрабатывается одновременно
+     * @param stateDirectory    каталог файлов состояния или null для рабочего каталога
+     * @param datasourceEnabled читать отчеты и коды из БД, а не через REST
+     */
+    public Target(String name, String host, String login, String password, int concurrency,
+                  Path stateDirectory, boolean datasourceEnabled) {
+        this.name = name;
+        this.host = host;
+        this.login = login;
+        this.password = password;
+        this.concurrency = concurrency;
+        this.stateDirectory = stateDirectory;
+        this.datasourceEnabled = datasourceEnabled;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public boolean isDatasourceEnabled() {
+        return datasourceEnabled;
+    }
+
+    /**
+     * Располагает файл состояния в каталоге цели.
+     *
+     * @param file путь из конфига, например journal.dat
+     * @return путь внутри каталога цели или сам путь, если каталог не задан
+     */
+    public Path resolve(String file) {
+        return stateDirectory == null ? Path.of(file) : stateDirectory.resolve(file);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + host + ")";
+    }
+}
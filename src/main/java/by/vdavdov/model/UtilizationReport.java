@@ -0,0 +1,22 @@
+package by.vdavdov.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Модель для парсинга.
+ * Утиль (отчет о нанесении), связанный с отчетом об использовании кодов.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class UtilizationReport {
+    @JsonProperty("id")
+    private String id;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+}
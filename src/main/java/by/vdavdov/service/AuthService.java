@@ -1,48 +1,141 @@
 package by.vdavdov.service;
 
+import by.vdavdov.model.Target;
+import by.vdavdov.utils.JsonCodec;
+import by.vdavdov.utils.LogPayload;
 import by.vdavdov.utils.YamlUtil;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class AuthService {
     private static final Logger log = LogManager.getLogger(AuthService.class);
+    private static final Duration DEFAULT_TOKEN_TTL = Duration.ofMinutes(5);
+
+    private final HttpTransport transport;
+    private final Target target;
+    private final AtomicReference<CachedToken> cachedToken = new AtomicReference<>();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicBoolean skewLogged = new AtomicBoolean();
+
+    public AuthService(HttpTransport transport, Target target) {
+        this.transport = transport;
+        this.target = target;
+    }
 
     /**
-     * Запрашивает JWT-токен с сервера.
+     * Отдает закешированный JWT-токен, при необходимости получая новый.
+     * Токен обновляется заранее, за {@code auth.refreshBefore} секунд до истечения {@code exp},
+     * но не раньше середины срока жизни токена.
+     * Параллельные вызовы во время обновления ждут один общий запрос авторизации.
      *
      * @return JWT-токен.
      * @throws Exception Если запрос не удался.
      */
     public String getToken() throws Exception {
-        String authUrl = YamlUtil.host + "/auth/api/auth?locale=ru-RU";
-        String login = YamlUtil.authLogin;
-        String password = YamlUtil.authPassword;
+        CachedToken current = cachedToken.get();
+        if (current != null && current.isFresh()) {
+            return current.token();
+        }
+
+        refreshLock.lock();
+        try {
+            current = cachedToken.get();
+            if (current != null && current.isFresh()) {
+                return current.token();
+            }
+            String token = requestToken();
+            Instant expiresAt = readExpiration(token);
+            Instant now = Instant.now();
+            if (!expiresAt.isAfter(now) && skewLogged.compareAndSet(false, true)) {
+                log.warn("Токен для {} истек еще до получения (exp {}, сейчас {}): расхождение часов с сервером авторизации, "
+                        + "токен будет обновляться каждые {}", target.getName(), expiresAt, now, DEFAULT_TOKEN_TTL.dividedBy(2));
+            }
+            cachedToken.set(new CachedToken(token,
+                    refreshAt(now, expiresAt, Duration.ofSeconds(YamlUtil.authRefreshBefore))));
+            log.info("Получен новый токен для {}, истекает {}", target.getName(), expiresAt);
+            return token;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает закешированный токен, если он совпадает с переданным.
+     * Сравнение нужно, чтобы несколько одновременных 401 не вызывали повторных логинов.
+     *
+     * @param token токен, на который сервер ответил 401
+     */
+    public void invalidate(String token) {
+        CachedToken current = cachedToken.get();
+        if (current != null && current.token().equals(token)) {
+            cachedToken.compareAndSet(current, null);
+        }
+    }
+
+    /**
+     * Выполняет запрос с заголовком Authorization.
+     * При ответе 401 один раз обновляет токен и повторяет запрос.
+     *
+     * @param builder     подготовленный запрос без авторизации
+     * @param bodyHandler обработчик тела ответа
+     * @return объект HTTP-ответа
+     * @throws Exception при ошибках выполнения запроса
+     */
+    public <T> HttpResponse<T> sendAuthorized(HttpRequest.Builder builder,
+                                              HttpResponse.BodyHandler<T> bodyHandler) throws Exception {
+        String token = getToken();
+        HttpResponse<T> response = transport.send(
+                builder.setHeader("Authorization", "Bearer " + token), bodyHandler);
+
+        if (response.statusCode() == 401) {
+            log.warn("Получен 401 на {}, обновляем токен и повторяем запрос", response.uri());
+            invalidate(token);
+            if (response.body() instanceof AutoCloseable body) {
+                body.close();
+            }
+            response = transport.send(
+                    builder.setHeader("Authorization", "Bearer " + getToken()), bodyHandler);
+        }
+        return response;
+    }
+
+    /**
+     * Запрашивает JWT-токен с сервера.
+     *
+     * @return JWT-токен.
+     * @throws Exception Если запрос не удался.
+     */
+    private String requestToken() throws Exception {
+        String authUrl = target.getHost() + "/auth/api/auth?locale=ru-RU";
+        String login = target.getLogin();
+        String password = target.getPassword();
 
         String jsonBody = String.format(
                 "{\"login\": \"%s\", \"password\": \"%s\"}"
                 , login, password
         );
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest httpRequest = HttpRequest.newBuilder()
+        HttpRequest.Builder httpRequest = HttpRequest.newBuilder()
                 .uri(new URI(authUrl))
                 .header("Content-Type", "application/json")
                 .header("Accept", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                .build();
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody));
 
-        HttpResponse<String> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = transport.send(httpRequest, HttpResponse.BodyHandlers.ofString());
 
         if (response.statusCode() == 200) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(response.body());
+            JsonNode jsonNode = JsonCodec.treeReader().readTree(response.body());
             String token = jsonNode.get("token").asText();
 
             if (token != null && !token.isEmpty()) {
@@ -52,8 +145,58 @@ public class AuthService {
                 throw new RuntimeException("Токен не найден в ответе сервера");
             }
         } else {
-            log.error("Ошибка аутентификации: {} {}", response.statusCode(), response.body());
-            throw new RuntimeException("Ошибка аутентификации: " + response.statusCode() + " " + response.body());
+            log.error("Ошибка аутентификации: {} {}", response.statusCode(), LogPayload.of(response.body()));
+            throw new RuntimeException("Ошибка аутентификации: " + response.statusCode() + " "
+                    + LogPayload.truncate(response.body()));
+        }
+    }
+
+    /**
+     * Читает время истечения токена из claim {@code exp}.
+     * Подпись не проверяется: время нужно только для планирования обновления.
+     *
+     * @param token JWT-токен
+     * @return момент истечения или now + 5 минут, если claim прочитать не удалось
+     */
+    static Instant readExpiration(String token) {
+        try {
+            String[] parts = token.split("\\.");
+            if (parts.length >= 2) {
+                byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+                JsonNode exp = JsonCodec.treeReader().readTree(payload).get("exp");
+                if (exp != null && exp.canConvertToLong()) {
+                    return Instant.ofEpochSecond(exp.asLong());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось прочитать exp из токена", e);
+        }
+        return Instant.now().plus(DEFAULT_TOKEN_TTL);
+    }
+
+    /**
+     * Вычисляет момент обновления токена. Запас не превышает половины срока жизни токена,
+     * иначе короткоживущий токен считался бы устаревшим сразу и каждый вызов заново логинился бы.
+     * Если exp уже прошел (расхождение часов), токен используется половину срока по умолчанию:
+     * сервер сам ответит 401, если токен действительно недействителен.
+     *
+     * @param now           момент получения токена
+     * @param expiresAt     момент истечения токена
+     * @param refreshBefore желаемый запас до истечения
+     * @return момент, после которого токен нужно обновить
+     */
+    static Instant refreshAt(Instant now, Instant expiresAt, Duration refreshBefore) {
+        Duration ttl = Duration.between(now, expiresAt);
+        if (ttl.isNegative() || ttl.isZero()) {
+            return now.plus(DEFAULT_TOKEN_TTL.dividedBy(2));
+        }
+        Duration margin = refreshBefore.compareTo(ttl.dividedBy(2)) > 0 ? ttl.dividedBy(2) : refreshBefore;
+        return expiresAt.minus(margin);
+    }
+
+    private record CachedToken(String token, Instant refreshAt) {
+        boolean isFresh() {
+            return Instant.now().isBefore(refreshAt);
         }
     }
 }
@@ -1,16 +1,28 @@
 package by.vdavdov.service;
 
-import by.vdavdov.utils.YamlUtil;
+import by.vdavdov.utils.LogPayload;
+import by.vdavdov.utils.TaskGroup;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class CancelService {
     private static final Logger log = LogManager.getLogger(CancelService.class);
+    private final AuthService authService;
+    private final String host;
+
+    public CancelService(AuthService authService, String host) {
+        this.authService = authService;
+        this.host = host;
+    }
 
     /**
      * Отменяет раннее проверенный отчет.
@@ -18,9 +30,43 @@ public class CancelService {
      * @throws Exception Если запрос не удался.
      */
     public void cancel(String reportId) throws Exception {
-        AuthService authService = new AuthService();
         log.info("Начало отмены отчетов");
+        send(reportId);
+    }
+
+    /**
+     * Отменяет несколько отчетов параллельно, не более {@code concurrency} запросов одновременно.
+     * Все запросы используют общий токен и пул соединений HTTP-транспорта.
+     * Ошибка отмены одного отчета не прерывает отмену остальных.
+     *
+     * @param reportIds   ID отчетов
+     * @param concurrency максимум одновременных запросов отмены
+     * @return итог по каждому отчету
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public CancelResult cancelAll(Collection<String> reportIds, int concurrency) throws InterruptedException {
+        log.info("Начало отмены {} отчетов, одновременно {}", reportIds.size(), concurrency);
+        List<String> cancelled = new CopyOnWriteArrayList<>();
+        Map<String, Exception> failed = new ConcurrentHashMap<>();
+        try (TaskGroup requests = new TaskGroup(concurrency)) {
+            for (String reportId : reportIds) {
+                requests.submit(() -> {
+                    try {
+                        send(reportId);
+                        cancelled.add(reportId);
+                    } catch (Exception e) {
+                        failed.put(reportId, e);
+                    }
+                });
+            }
+            requests.await();
+        }
+        CancelResult result = new CancelResult(cancelled, failed);
+        log.info("Отмена завершена: {}", result);
+        return result;
+    }
 
+    private void send(String reportId) throws Exception {
         String jsonBody =
                 """
                 {
@@ -28,27 +74,25 @@ public class CancelService {
                 }
                 """;
 
-        String url = YamlUtil.host
+        String url = host
                 + "/code-usage-processor/api/v2/code-usage-reports/"
                 + reportId
                 + "/cancel";
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
+        HttpRequest.Builder request = HttpRequest.newBuilder()
                 .uri(new URI(url))
-                .header("Authorization", "Bearer " + authService.getToken())
                 .header("Content-Type", "application/json")
-                .PUT(HttpRequest.BodyPublishers.ofString(jsonBody))
-                .build();
+                .PUT(HttpRequest.BodyPublishers.ofString(jsonBody));
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = authService.sendAuthorized(
+                request, HttpResponse.BodyHandlers.ofString());
 
         if (response.statusCode() != 200) {
             log.error("Не получилось отменить отчет с id - {}, ошибка {} {}",
                     reportId,
                     response.statusCode(),
-                    response.body());
-            throw new RuntimeException(response.body());
+                    LogPayload.of(response.body()));
+            throw new RuntimeException(LogPayload.truncate(response.body()));
         }
 
         if (response.statusCode() == 200) {
@@ -57,4 +101,16 @@ public class CancelService {
         }
     }
 
+    /**
+     * Итог массовой отмены.
+     *
+     * @param cancelled ID отмененных отчетов
+     * @param failed    ошибки по ID отчетов, которые отменить не удалось
+     */
+    public record CancelResult(List<String> cancelled, Map<String, Exception> failed) {
+        @Override
+        public String toString() {
+            return "отменено " + cancelled.size() + ", ошибок " + failed.size();
+        }
+    }
 }
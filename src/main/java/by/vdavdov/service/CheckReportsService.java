@@ -1,119 +1,587 @@
 package by.vdavdov.service;
 
 import by.vdavdov.model.*;
+import by.vdavdov.utils.CodeIndex;
+import by.vdavdov.utils.JsonCodec;
+import by.vdavdov.utils.LogPayload;
+import by.vdavdov.utils.Metrics;
+import by.vdavdov.utils.ReportEvent;
+import by.vdavdov.utils.StripedLock;
+import by.vdavdov.utils.TaskGroup;
 import by.vdavdov.utils.YamlUtil;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
 
 public class CheckReportsService {
     private static final Logger log = LogManager.getLogger(CheckReportsService.class);
-    private final AuthService authService = new AuthService();
-    private final CancelService cancelService = new CancelService();
-    private final LastRunService lastRunService = new LastRunService();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Logger events = LogManager.getLogger("by.vdavdov.events");
+    private static final int PARALLEL_MATCH_THRESHOLD = 20_000;
+    private static final String CANCEL_PENDING = "CANCEL_PENDING";
+    private static final String RETRY_LATER = "RETRY_LATER";
+    private static final ObjectReader reportsReader = JsonCodec.reader(ReportsResponse.class);
+    private static final ObjectReader attemptsReader = JsonCodec.reader(AttemptsResponse.class);
+    private static final ObjectReader utilizationReportsReader = JsonCodec.listReader(UtilizationReport.class);
+    private static final ObjectWriter codesWriter = JsonCodec.listWriter(String.class);
+    private final Target target;
+    private final String host;
+    private final HttpTransport transport;
+    private final AuthService authService;
+    private final CancelService cancelService;
+    private final ReportCodesReader codesReader;
+    private final RegulatorResponseDecoder regulatorDecoder = new RegulatorResponseDecoder();
+    private final ResponseContentCache contentCache;
+    private final CodeRemovalPlanner removalPlanner =
+            new CodeRemovalPlanner(YamlUtil.removalChunkSize, YamlUtil.removalMaxIterations);
+    private final WorkJournal journal;
+    private final ProcessedReportsFilter processedFilter;
+    private final DatabaseService database;
+    private final PostgresReportsReader postgresReader;
+    private final LeaseCoordinator coordinator;
+    private final LastRunService lastRunService;
+    private final StripedLock orderLocks = new StripedLock(64);
+    private final ExecutorService branches = Executors.newVirtualThreadPerTaskExecutor();
+    private final Queue<PendingCancel> pendingCancels = new ConcurrentLinkedQueue<>();
+    private volatile boolean requestCompressionRejected;
+    private volatile int pageSize = YamlUtil.discoveryPageSize;
+    private volatile Instant watermark;
+    private final LongAdder completedReports = new LongAdder();
+
+    /**
+     * Сервис для цели по умолчанию из host и auth верхнего уровня конфига.
+     */
+    public CheckReportsService() {
+        this(YamlUtil.defaultTarget());
+    }
+
+    /**
+     * Сервис для одной цели: свой HTTP-транспорт, кеш токена, журнал, список
+     * обработанных отчетов, кеш ответов регулятора и время последнего запуска.
+     *
+     * @param target цель обработки
+     */
+    public CheckReportsService(Target target) {
+        boolean coordinated = YamlUtil.coordinationEnabled;
+        this.target = target;
+        this.host = target.getHost();
+        this.transport = new HttpTransport(target.getName());
+        this.authService = new AuthService(transport, target);
+        this.cancelService = new CancelService(authService, host);
+        this.codesReader = new ReportCodesReader(authService, host);
+        this.contentCache = new ResponseContentCache(target.resolve(YamlUtil.cacheDirectory),
+                YamlUtil.cacheMaxSizeMb * 1024L * 1024L, Duration.ofHours(YamlUtil.cacheTtlHours), YamlUtil.cacheEnabled);
+        this.journal = new WorkJournal(target.resolve(YamlUtil.journalFile),
+                Duration.ofHours(YamlUtil.journalRetentionHours));
+        this.processedFilter = new ProcessedReportsFilter(target.resolve(YamlUtil.processedFile),
+                Duration.ofHours(YamlUtil.processedTtlHours), YamlUtil.processedExpectedReports);
+        this.lastRunService = new LastRunService(target.resolve(YamlUtil.lastRunFile));
+        this.database = target.isDatasourceEnabled() || coordinated ? new DatabaseService() : null;
+        this.postgresReader = !target.isDatasourceEnabled() ? null
+                : new PostgresReportsReader(database.getDataSource(), YamlUtil.datasourceReportsQuery,
+                        YamlUtil.datasourceCodesQuery, YamlUtil.datasourceFetchSize);
+        try {
+            this.coordinator = !coordinated ? null
+                    : new LeaseCoordinator(database.getDataSource(), target.getName(),
+                            YamlUtil.coordinationInstanceId != null ? YamlUtil.coordinationInstanceId
+                                    : LeaseCoordinator.defaultInstanceId(),
+                            YamlUtil.coordinationLeaseSeconds, YamlUtil.coordinationHeartbeatSeconds,
+                            Duration.ofHours(YamlUtil.processedTtlHours));
+        } catch (SQLException e) {
+            database.close();
+            throw new RuntimeException("Не удалось подготовить таблицы координации в БД", e);
+        }
+
+        Metrics.gauge("multon_last_run_lag_seconds",
+                () -> watermark == null ? 0 : Duration.between(watermark, Instant.now()).toMillis() / 1000.0,
+                "target", target.getName());
+    }
+
+    public Target getTarget() {
+        return target;
+    }
 
     /**
      * Основной метод обработки отклоненных отчетов.
      * Выполняет поиск отчетов со статусом REJECTED, обработанных с момента последнего запуска.
-     * Обрабатывает результаты с пагинацией, сохраняет время текущего запуска при успешном выполнении.
+     * По первой странице узнает totalPages и запрашивает остальные страницы параллельно,
+     * отдавая отчеты в обработку по мере получения страниц.
+     * Перед поиском продолжает незавершенные отчеты из журнала работ.
+     * При {@code datasource.enabled: true} отчеты читаются одним запросом из БД.
+     * Отчеты, обработка которых упала, откладываются и повторяются в этом же запуске
+     * после паузы, до {@code retry.deferredRounds} раз.
+     * Сохраняет время текущего запуска, если все страницы получены успешно:
+     * отчеты, обработка которых не удалась, остаются в журнале и не теряются.
+     * <p>
+     * При {@code coordination.enabled: true} поиск выполняет только экземпляр, взявший
+     * в аренду общее время последнего запуска, найденные отчеты складываются в общую
+     * очередь в БД, а обрабатываются отчеты, взятые из нее в аренду (см. {@link LeaseCoordinator}).
      *
+     * @return количество отчетов, обработка которых завершилась в этом запуске
+     * (отменен, исправлен или передан на ручную обработку); отчеты с ошибками не считаются
      * @throws Exception при ошибках HTTP-запросов, парсинга или сохранения времени запуска
      */
-    public void getRejectedReports() throws Exception {
-        Instant lastRun = lastRunService.getLastRunTime();
+    public int getRejectedReports() throws Exception {
+        long completedBefore = completedReports.sum();
+        Instant lastRun = coordinator == null ? lastRunService.getLastRunTime()
+                : coordinator.acquireWatermark(lastRunService.getLastRunTime());
         Instant currentRun = Instant.now();
+        if (lastRun != null) {
+            watermark = lastRun;
+        }
+        long started = System.nanoTime();
+
+        int size = pageSize;
+        AtomicBoolean hasErrors = new AtomicBoolean();
+        LongAdder pageLatencyMillis = new LongAdder();
+        LongAdder pagesFetched = new LongAdder();
+        Set<String> scheduled = ConcurrentHashMap.newKeySet();
+        Queue<ContentItem> deferred = new ConcurrentLinkedQueue<>();
+
+        try (TaskGroup reports = new TaskGroup(target.getConcurrency());
+             TaskGroup pages = new TaskGroup(YamlUtil.discoveryParallelPages)) {
+
+            // В режиме координации незавершенные отчеты возвращаются через истечение аренды
+            List<ContentItem> unfinished = coordinator == null ? journal.unfinished() : List.of();
+            if (!unfinished.isEmpty()) {
+                log.info("Продолжение обработки {} незавершенных отчетов из журнала", unfinished.size());
+                processPage(unfinished, reports, scheduled, deferred);
+            }
 
-        int currentPage = 0;
-        boolean hasMorePages = true;
-        boolean hasErrors = false;
+            if (lastRun == null) {
+                log.info("Поиск отчетов выполняет другой экземпляр, обрабатываем общую очередь");
+            } else if (postgresReader != null) {
+                hasErrors.set(!discoverFromDatabase(lastRun, reports, scheduled, deferred));
+            } else {
+                ReportsResponse firstPage = fetchPage(lastRun, 0, size, pageLatencyMillis, pagesFetched);
+                if (firstPage == null || !processPage(firstPage.getContent(), reports, scheduled, deferred)) {
+                    hasErrors.set(true);
+                } else {
+
+                    if (firstPage.getTotalPages() > 0) {
+                        for (int page = 1; page < firstPage.getTotalPages(); page++) {
+                            int currentPage = page;
+                            pages.submit(() -> {
+                                ReportsResponse response = fetchPage(lastRun, currentPage, size, pageLatencyMillis, pagesFetched);
+                                if (response == null || !processPage(response.getContent(), reports, scheduled, deferred)) {
+                                    hasErrors.set(true);
+                                }
+                            });
+                        }
+                    } else {
+                        // Сервер не вернул totalPages - идем последовательно по признаку last
+                        ReportsResponse response = firstPage;
+                        int currentPage = 0;
+                        while (!response.isLast()) {
+                            response = fetchPage(lastRun, ++currentPage, size, pageLatencyMillis, pagesFetched);
+                            if (response == null || !processPage(response.getContent(), reports, scheduled, deferred)) {
+                                hasErrors.set(true);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            pages.await();
+            if (coordinator != null) {
+                processLeases(reports, scheduled, deferred);
+            }
+            reports.await();
+            cancelPending(deferred);
+            retryDeferred(reports, deferred);
+        }
 
-        while (hasMorePages && !hasErrors) {
-            String url = YamlUtil.host + "/code-usage-processor/api/v2/code-usage-reports?"
-                    + "query=status%3D%3DREJECTED%3Bupdated%3E%3D"
-                    + URLEncoder.encode(lastRun.toString(), StandardCharsets.UTF_8)
-                    + "&page=" + currentPage
-                    + "&size=50";
+        adaptPageSize(size, pageLatencyMillis.sum(), pagesFetched.sum());
+        journal.flush();
+        processedFilter.flush();
+
+        log.info("Лимиты одновременных запросов по эндпоинтам: {}", transport.limits());
+        long pagesCount = pagesFetched.sum();
+        int found = scheduled.size();
+        String name = target.getName();
+        Metrics.gauge("multon_run_pages", () -> pagesCount, "target", name);
+        Metrics.gauge("multon_run_reports", () -> found, "target", name);
+        Metrics.counter("multon_pages_total", "target", name).add(pagesCount);
+        Metrics.histogram("multon_run_seconds", "target", name).recordNanos(System.nanoTime() - started);
+        Metrics.counter("multon_runs_total", "target", name, "result", hasErrors.get() ? "error" : "ok").increment();
+
+        if (coordinator != null) {
+            if (lastRun != null) {
+                coordinator.releaseWatermark(hasErrors.get() ? null : currentRun);
+                if (!hasErrors.get()) {
+                    watermark = currentRun;
+                }
+            }
+        } else if (!hasErrors.get()) {
+            lastRunService.saveLastRunTime(currentRun);
+            watermark = currentRun;
+        }
+        int completed = (int) (completedReports.sum() - completedBefore);
+        log.info("Обработка завершена: отчетов в работе {}, завершено {}", found, completed);
+        return completed;
+    }
 
-            HttpResponse<String> response = sendGetRequest(url);
-            if (response.statusCode() != 200) {
-                log.error("Ошибка при получении страницы {}: {} {}", currentPage, response.statusCode(), response.body());
-                hasErrors = true;
-                continue;
+    /**
+     * Запрашивает одну страницу отклоненных отчетов.
+     *
+     * @param lastRun          время последнего запуска
+     * @param page             номер страницы
+     * @param size             размер страницы
+     * @param latencyMillis    накопитель суммарного времени ответа
+     * @param pagesFetched     счетчик полученных страниц
+     * @return страница отчетов или null при ошибке
+     */
+    private ReportsResponse fetchPage(Instant lastRun, int page, int size,
+                                      LongAdder latencyMillis, LongAdder pagesFetched) {
+        String url = host + "/code-usage-processor/api/v2/code-usage-reports?"
+                + "query=status%3D%3DREJECTED%3Bupdated%3E%3D"
+                + URLEncoder.encode(lastRun.toString(), StandardCharsets.UTF_8)
+                + "&page=" + page
+                + "&size=" + size;
+
+        HttpResponse<String> response;
+        try {
+            long started = System.nanoTime();
+            response = sendGetRequest(url);
+            latencyMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            pagesFetched.increment();
+        } catch (Exception e) {
+            log.error("Ошибка при получении страницы {}", page, e);
+            return null;
+        }
+
+        if (response.statusCode() != 200) {
+            log.error("Ошибка при получении страницы {}: {} {}", page, response.statusCode(), LogPayload.of(response.body()));
+            return null;
+        }
+
+        try {
+            return parseResponse(response.body());
+        } catch (IOException e) {
+            log.error("Ошибка парсинга ответа", e);
+            return null;
+        }
+    }
+
+    /**
+     * Подбирает размер страницы для следующего запуска по среднему времени ответа:
+     * быстрые ответы увеличивают страницу вдвое, медленные - уменьшают вдвое,
+     * в пределах {@code discovery.minPageSize}..{@code discovery.maxPageSize}.
+     */
+    private void adaptPageSize(int size, long latencyMillis, long pages) {
+        if (pages == 0) {
+            return;
+        }
+        long averageLatency = latencyMillis / pages;
+        int newSize = size;
+        if (averageLatency > YamlUtil.discoveryTargetLatencyMillis) {
+            newSize = Math.max(YamlUtil.discoveryMinPageSize, size / 2);
+        } else if (averageLatency < YamlUtil.discoveryTargetLatencyMillis / 2) {
+            newSize = Math.min(YamlUtil.discoveryMaxPageSize, size * 2);
+        }
+        if (newSize != size) {
+            log.info("Размер страницы изменен {} -> {} (среднее время ответа {} мс)", size, newSize, averageLatency);
+            pageSize = newSize;
+        }
+    }
+
+    /**
+     * Читает отклоненные отчеты из БД и отдает их в обработку по мере чтения.
+     *
+     * @param lastRun   время последнего запуска
+     * @param reports   группа задач обработки отчетов
+     * @param scheduled ID отчетов, уже отданных в обработку в этом запуске
+     * @param deferred  очередь отчетов для повторной обработки
+     * @return true, если чтение завершилось без ошибок
+     */
+    private boolean discoverFromDatabase(Instant lastRun, TaskGroup reports, Set<String> scheduled,
+                                         Queue<ContentItem> deferred) {
+        try {
+            List<ContentItem> buffer = coordinator == null ? null : new ArrayList<>();
+            int found = postgresReader.forEachRejectedReport(lastRun, item -> {
+                if (buffer != null) {
+                    buffer.add(item);
+                } else {
+                    schedule(item, reports, scheduled, deferred);
+                }
+            });
+            log.info("Из БД получено отклоненных отчетов: {}", found);
+            return buffer == null || processPage(buffer, reports, scheduled, deferred);
+        } catch (SQLException e) {
+            log.error("Ошибка чтения отклоненных отчетов из БД", e);
+            return false;
+        }
+    }
+
+    /**
+     * Отдает отчеты страницы в обработку.
+     * Отчеты выполняются на виртуальных потоках группы, не более
+     * {@code processing.concurrency} одновременно. Метод не ждет их завершения.
+     * В режиме координации отчеты только добавляются в общую очередь в БД.
+     *
+     * @param items     список элементов отчетов на текущей странице
+     * @param reports   группа задач обработки отчетов
+     * @param scheduled ID отчетов, уже отданных в обработку в этом запуске
+     * @param deferred  очередь отчетов для повторной обработки
+     * @return false, если отчеты не удалось добавить в общую очередь
+     */
+    private boolean processPage(List<ContentItem> items, TaskGroup reports, Set<String> scheduled,
+                                Queue<ContentItem> deferred) {
+        if (items == null) {
+            return true;
+        }
+        if (coordinator != null) {
+            try {
+                log.debug("В общую очередь добавлено отчетов: {}", coordinator.offer(items));
+                return true;
+            } catch (SQLException e) {
+                log.error("Ошибка добавления отчетов в общую очередь", e);
+                return false;
             }
+        }
+        items.forEach(item -> schedule(item, reports, scheduled, deferred));
+        return true;
+    }
 
+    /**
+     * Забирает отчеты из общей очереди пачками по {@code coordination.batchSize}
+     * и обрабатывает их, пока очередь не опустеет. Этап, записанный предыдущим
+     * владельцем отчета, переносится в локальный журнал, и обработка продолжается с него.
+     *
+     * @param reports   группа задач обработки отчетов
+     * @param scheduled ID отчетов, уже отданных в обработку в этом запуске
+     * @param deferred  очередь отчетов для повторной обработки
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    private void processLeases(TaskGroup reports, Set<String> scheduled,
+                               Queue<ContentItem> deferred) throws InterruptedException {
+        while (true) {
+            List<LeaseCoordinator.Lease> leases;
             try {
-                ReportsResponse reportsResponse = parseResponse(response.body());
-                processPage(reportsResponse.getContent());
-                hasMorePages = !reportsResponse.isLast();
-                currentPage++;
-            } catch (IOException e) {
-                log.error("Ошибка парсинга ответа", e);
-                hasErrors = true;
+                leases = coordinator.claim(YamlUtil.coordinationBatchSize);
+            } catch (SQLException e) {
+                log.error("Ошибка получения отчетов из общей очереди", e);
+                return;
+            }
+            if (leases.isEmpty()) {
+                return;
             }
+            for (LeaseCoordinator.Lease lease : leases) {
+                ContentItem item = lease.item();
+                if (lease.stage() != null && lease.stage() != journal.stageOf(item.getId())) {
+                    journal.advance(item, lease.stage());
+                }
+                scheduled.add(item.getId());
+                reports.submit(() -> processItem(item, deferred));
+            }
+            reports.await();
+            cancelPending(deferred);
         }
+    }
 
-        if (!hasErrors) {
-            lastRunService.saveLastRunTime(currentRun);
-            log.info("Обработка завершена. Следующий запуск через {} минут", YamlUtil.scheduleInterval);
+    /**
+     * Отдает отчет в обработку, если он еще не был отдан в этом запуске
+     * и не был обработан ранее (см. {@link ProcessedReportsFilter}).
+     */
+    private void schedule(ContentItem item, TaskGroup reports, Set<String> scheduled,
+                          Queue<ContentItem> deferred) {
+        if (processedFilter.contains(item.getId())) {
+            log.debug("[{}] Пропущен, обработка завершена ранее", item.getId());
+            return;
+        }
+        if (scheduled.add(item.getId())) {
+            reports.submit(() -> processItem(item, deferred));
         }
     }
 
     /**
-     * Обрабатывает страницу с элементами отчетов.
-     * Для каждого элемента в зависимости от причины отклонения вызывает соответствующий обработчик.
+     * Повторяет отложенные отчеты, пока очередь не опустеет или не кончатся раунды.
+     * Перед каждым раундом выдерживается пауза {@code retry.deferredDelaySeconds},
+     * чтобы кратковременный сбой сервера успел пройти, но не меньше, чем цепи
+     * транспорта еще будут разомкнуты: иначе повтор сразу упадет с {@link CircuitOpenException}.
+     * Обработка отчета продолжается с последнего этапа, записанного в журнал.
      *
-     * @param items список элементов отчетов на текущей странице
+     * @param reports  группа задач обработки отчетов
+     * @param deferred очередь отложенных отчетов
+     * @throws InterruptedException если поток был прерван во время ожидания
      */
-    private void processPage(List<ContentItem> items) {
-        items.forEach(item -> {
-            try {
-                if (item.getRejectionReason().contains("Повторное нанесение")) {
-                    processPartialDuplicate(item.getId(), item.getOrderNumber());
-                } else if (item.getRejectionReason().contains("Дубликат кода")) {
-                    processFullDuplicate(item.getId());
+    private void retryDeferred(TaskGroup reports, Queue<ContentItem> deferred) throws InterruptedException {
+        for (int round = 1; round <= YamlUtil.retryDeferredRounds && !deferred.isEmpty(); round++) {
+            List<ContentItem> items = new ArrayList<>();
+            for (ContentItem item; (item = deferred.poll()) != null; ) {
+                items.add(item);
+            }
+            long delayMillis = Math.max(TimeUnit.SECONDS.toMillis(YamlUtil.retryDeferredDelaySeconds),
+                    transport.circuitOpenRemainingMillis());
+            log.info("Повтор {} отложенных отчетов через {} мс (раунд {} из {})",
+                    items.size(), delayMillis, round, YamlUtil.retryDeferredRounds);
+            TimeUnit.MILLISECONDS.sleep(delayMillis);
+
+            Queue<ContentItem> next = round < YamlUtil.retryDeferredRounds ? deferred : null;
+            items.forEach(item -> reports.submit(() -> processItem(item, next)));
+            reports.await();
+            cancelPending(next);
+        }
+    }
+
+    /**
+     * Обрабатывает один отчет.
+     * В зависимости от причины отклонения вызывает соответствующий обработчик.
+     * Ошибка обработки не влияет на остальные отчеты: отчет откладывается для повтора
+     * в этом же запуске, а если повторов не осталось - остается в журнале работ
+     * до следующего запуска.
+     * Итог обработки с временем шагов пишется одной строкой в лог событий by.vdavdov.events.
+     *
+     * @param item     элемент отчета
+     * @param deferred очередь отложенных отчетов или null, если повторов больше не будет
+     */
+    private void processItem(ContentItem item, Queue<ContentItem> deferred) {
+        String reason = item.getRejectionReason().contains("Повторное нанесение") ? "partial_duplicate"
+                : item.getRejectionReason().contains("Дубликат кода") ? "full_duplicate"
+                : "other";
+        ReportEvent event = new ReportEvent(target.getName(), item.getId(), reason);
+        Metrics.counter("multon_reports_total", "target", target.getName(), "reason", reason).increment();
+        try {
+            if (reason.equals("partial_duplicate")) {
+                processPartialDuplicate(item, event);
+            } else if (reason.equals("full_duplicate")) {
+                processFullDuplicate(item, event);
+            } else {
+                event.outcome("SKIPPED");
+                if (coordinator != null) {
+                    coordinator.complete(item.getId(), null);
                 }
-            } catch (Exception e) {
-                log.error("Ошибка обработки отчета {}", item.getId(), e);
             }
+        } catch (Exception e) {
+            fail(item, event, e, deferred);
+        }
+        if (CANCEL_PENDING.equals(event.getOutcome())) {
+            // Итог запишет массовая отмена
+            return;
+        }
+        writeEvent(event);
+    }
+
+    /**
+     * Откладывает отчет с ошибкой для повтора, а если повторов не осталось - оставляет его
+     * в журнале работ до следующего запуска.
+     */
+    private void fail(ContentItem item, ReportEvent event, Exception e, Queue<ContentItem> deferred) {
+        event.error(e);
+        if (deferred != null) {
+            log.warn("[{}] Ошибка обработки, отчет отложен для повтора", item.getId(), e);
+            event.outcome("DEFERRED");
+            deferred.add(item);
+        } else {
+            log.error("[{}] Критическая ошибка обработки", item.getId(), e);
+            event.outcome("FAILED");
+            if (journal.stageOf(item.getId()) == null) {
+                journal.advance(item, ReportStage.DISCOVERED);
+            }
+            if (coordinator != null) {
+                coordinator.release(item.getId(), Duration.ofSeconds(YamlUtil.coordinationLeaseSeconds));
+            }
+        }
+    }
+
+    private void writeEvent(ReportEvent event) {
+        event.complete();
+        Metrics.counter("multon_report_outcomes_total", "target", target.getName(), "outcome", event.getOutcome()).increment();
+        events.info("{}", event);
+    }
+
+    /**
+     * Отменяет накопленные полные дубликаты одним пакетом, не более {@code cancel.concurrency}
+     * запросов одновременно. Отчеты, которые отменить не удалось, откладываются
+     * для повтора так же, как при ошибке обработки.
+     *
+     * @param deferred очередь отложенных отчетов или null, если повторов больше не будет
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    private void cancelPending(Queue<ContentItem> deferred) throws InterruptedException {
+        Map<String, PendingCancel> batch = new LinkedHashMap<>();
+        for (PendingCancel pending; (pending = pendingCancels.poll()) != null; ) {
+            batch.put(pending.item().getId(), pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        CancelService.CancelResult result = cancelService.cancelAll(batch.keySet(), YamlUtil.cancelConcurrency);
+        long elapsed = System.nanoTime() - started;
+        Metrics.histogram("multon_step_seconds", "target", target.getName(), "step", "cancel").recordNanos(elapsed);
+
+        for (String reportId : result.cancelled()) {
+            PendingCancel pending = batch.get(reportId);
+            pending.event().stage("cancel", elapsed);
+            finish(pending.item(), ReportStage.CANCELLED, pending.event());
+            log.info("Отчет {} отменен", reportId);
+            writeEvent(pending.event());
+        }
+        result.failed().forEach((reportId, e) -> {
+            PendingCancel pending = batch.get(reportId);
+            pending.event().stage("cancel", elapsed);
+            fail(pending.item(), pending.event(), e, deferred);
+            writeEvent(pending.event());
         });
     }
 
     /**
      * Обрабатывает полный дубликат отчета.
-     * Проверяет количество утилей в отчете: при наличии одного утиля отправляет на отмену,
-     * при большем количестве требует ручной обработки.
+     * Проверяет количество утилей в отчете: при наличии одного утиля ставит отчет в очередь
+     * на отмену (см. {@link #cancelPending}), при большем количестве требует ручной обработки.
      *
-     * @param reportId ID обрабатываемого отчета
+     * @param item  обрабатываемый отчет
+     * @param event событие обработки отчета
      * @throws Exception при ошибках HTTP-запросов или парсинга ответа
      */
-    private void processFullDuplicate(String reportId) throws Exception {
-        HttpResponse<String> response = sendGetRequest(
-                YamlUtil.host + "/api/utilization-reports/" + reportId
-        );
-
-        if (response.statusCode() == 200) {
-            JsonNode utils = objectMapper.readTree(response.body());
-            if (utils.size() < 2) {
-                sentToCancel(reportId);
-                log.info("Отчет {} отменен", reportId);
-            } else {
-                log.info("Отчет {} содержит {} утилей, требуется ручная обработка", reportId, utils.size());
+    private void processFullDuplicate(ContentItem item, ReportEvent event) throws Exception {
+        String reportId = item.getId();
+        HttpResponse<InputStream> response = step(event, "util", () -> sendGetStream(
+                host + "/api/utilization-reports/" + reportId
+        ));
+
+        List<UtilizationReport> utils;
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("Ошибка получения утилей: " + response.statusCode());
             }
+            utils = utilizationReportsReader.readValue(body);
+        }
+
+        if (utils.size() < 2) {
+            pendingCancels.add(new PendingCancel(item, event));
+            event.outcome(CANCEL_PENDING);
+            log.debug("Отчет {} поставлен в очередь на отмену", reportId);
+        } else {
+            finish(item, ReportStage.MANUAL, event);
+            log.info("Отчет {} содержит {} утилей, требуется ручная обработка", reportId, utils.size());
         }
     }
 
@@ -121,112 +589,262 @@ public class CheckReportsService {
      * Обрабатывает повторное нанесение.
      * Выполняет многоэтапную обработку: получение кодов, проверку утилей,
      * анализ ответов регулятора и удаление проблемных кодов.
+     * Каждый завершенный этап пишется в журнал работ, повторная обработка
+     * продолжается с этапа, следующего за последним записанным. Отчет, снова
+     * отклоненный после завершенной обработки, пропускается, пока не истечет
+     * {@code processed.ttlHours} (см. {@link ProcessedReportsFilter}), и только
+     * затем обрабатывается с начала.
      *
-     * @param reportId    ID обрабатываемого отчета
-     * @param orderNumber номер заказа, связанного с отчетом
+     * @param item  обрабатываемый отчет
+     * @param event событие обработки отчета
+     * @throws Exception при ошибках HTTP-запросов или парсинга ответа
      */
-    private void processPartialDuplicate(String reportId, String orderNumber) {
-        try {
-            log.info("[{}] Начало обработки частичного дубля", reportId);
-
-            // 1. Получение кодов отчета
-            List<CodeInfo> codes = getReportCodes(reportId);
-            log.debug("[{}] Получено кодов: {}", reportId, codes.size());
-
-            if (codes.isEmpty()) {
-                log.warn("[{}] Нет кодов для обработки", reportId);
+    private void processPartialDuplicate(ContentItem item, ReportEvent event) throws Exception {
+        String reportId = item.getId();
+        ReportStage stage = journal.stageOf(reportId);
+        if (stage == null || stage.isTerminal()) {
+            stage = ReportStage.DISCOVERED;
+            advance(item, stage);
+        }
+        log.info("[{}] Начало обработки частичного дубля, этап {}", reportId, stage);
+
+        String utilId = null;
+        if (stage == ReportStage.DISCOVERED) {
+            Removal removal = removeDuplicateCodes(reportId, event);
+            if (removal.utilId() == null) {
+                if (removal.manual()) {
+                    finish(item, ReportStage.MANUAL, event);
+                } else {
+                    retryLater(item, event);
+                }
                 return;
             }
+            utilId = removal.utilId();
+            stage = ReportStage.CODES_REMOVED;
+            advance(item, stage);
+        }
 
-            // 2. Получение ID утиля
-            String utilId = getUtilIdForReport(reportId);
+        // 7. Финализация обработки
+        if (stage == ReportStage.CODES_REMOVED) {
             if (utilId == null) {
-                log.warn("[{}] Утиль не найден", reportId);
-                return;
+                List<UtilizationReport> utils = step(event, "util", () -> getUtilsForReport(reportId));
+                utilId = singleUtilId(reportId, utils);
+                if (utilId == null) {
+                    if (utils.size() > 1) {
+                        finish(item, ReportStage.MANUAL, event);
+                    } else {
+                        retryLater(item, event);
+                    }
+                    return;
+                }
+            }
+            String acceptedUtilId = utilId;
+            step(event, "accept", () -> {
+                acceptReport(acceptedUtilId);
+                return null;
+            });
+            stage = ReportStage.ACCEPTED;
+            advance(item, stage);
+        }
+        if (stage == ReportStage.ACCEPTED) {
+            step(event, "recalculate", () -> {
+                recalculateOrder(reportId, item.getOrderNumber());
+                return null;
+            });
+            finish(item, ReportStage.RECALCULATED, event);
+        }
+        log.info("[{}] Успешно обработан", reportId);
+    }
+
+    /**
+     * Фиксирует итог обработки отчета в журнале работ и в списке обработанных отчетов.
+     */
+    private void finish(ContentItem item, ReportStage stage, ReportEvent event) {
+        journal.advance(item, stage);
+        processedFilter.add(item.getId(), stage);
+        if (coordinator != null) {
+            coordinator.complete(item.getId(), stage);
+        }
+        completedReports.increment();
+        event.outcome(stage.name());
+    }
+
+    /**
+     * Откладывает отчет до следующего запуска, когда данные для обработки еще не готовы:
+     * нет утиля, ответа регулятора или кодов. Отчет остается незавершенным в журнале работ
+     * и не попадает в список обработанных, поэтому следующий запуск продолжит его
+     * с записанного этапа. В режиме координации отчет возвращается в общую очередь
+     * через {@code coordination.leaseSeconds}.
+     */
+    private void retryLater(ContentItem item, ReportEvent event) {
+        if (coordinator != null) {
+            coordinator.release(item.getId(), Duration.ofSeconds(YamlUtil.coordinationLeaseSeconds));
+        }
+        event.outcome(RETRY_LATER);
+    }
+
+    /**
+     * Записывает этап в журнал работ, а в режиме координации - и в общую очередь.
+     */
+    private void advance(ContentItem item, ReportStage stage) {
+        journal.advance(item, stage);
+        if (coordinator != null) {
+            coordinator.progress(item.getId(), stage);
+        }
+    }
+
+    /**
+     * Выполняет шаг обработки и записывает его длительность в метрику {@code multon_step_seconds}
+     * и в событие обработки отчета.
+     */
+    private <T> T step(ReportEvent event, String name, Callable<T> action) throws Exception {
+        long started = System.nanoTime();
+        try {
+            return action.call();
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            Metrics.histogram("multon_step_seconds", "target", target.getName(), "step", name).recordNanos(elapsed);
+            event.stage(name, elapsed);
+        }
+    }
+
+    /**
+     * Находит и удаляет из отчета коды, которые регулятор отклонил как повторное нанесение.
+     * Коды отчета не зависят от цепочки утиль - responsePath - контент ответа регулятора,
+     * поэтому читаются параллельно с ней в отдельном виртуальном потоке. Если цепочка
+     * завершилась ошибкой или без результата, чтение кодов прерывается.
+     *
+     * @param reportId ID отчета
+     * @param event    событие обработки отчета
+     * @return ID утиля отчета или причина, по которой обработку нужно остановить
+     * @throws Exception при ошибках HTTP-запросов или парсинга ответа
+     */
+    private Removal removeDuplicateCodes(String reportId, ReportEvent event) throws Exception {
+        // 1. Получение кодов отчета, параллельно с шагами 2-4
+        Future<CodeIndex> codesBranch = branches.submit(() -> step(event, "codes", () -> getReportCodes(reportId)));
+        CodeIndex codes;
+        List<CisEntry> cisList;
+        String utilId;
+        try {
+            // 2. Получение ID утиля
+            List<UtilizationReport> utils = step(event, "util", () -> getUtilsForReport(reportId));
+            String foundUtilId = singleUtilId(reportId, utils);
+            if (foundUtilId == null) {
+                return utils.size() > 1 ? Removal.MANUAL : Removal.RETRY_LATER;
             }
+            utilId = foundUtilId;
 
             // 3. Получение последнего responsePath
-            String responsePath = getLatestResponsePath(utilId);
+            String responsePath = step(event, "response_path", () -> getLatestResponsePath(foundUtilId));
             if (responsePath == null) {
                 log.warn("[{}] Не найден responsePath", reportId);
-                return;
+                return Removal.RETRY_LATER;
             }
 
             // 4. Получение и обработка контента
-            String responseContent = getResponseContent(responsePath);
-            if (responseContent.isEmpty()) {
+            cisList = step(event, "content", () -> getResponseContent(responsePath));
+            if (cisList == null) {
                 log.warn("[{}] Пустой контент ответа", reportId);
-                return;
+                return Removal.RETRY_LATER;
             }
 
-            // 5. Поиск кодов для удаления
-            List<String> badCodes = processContent(responseContent, codes);
-            log.info("[{}] Найдено кодов для удаления: {}", reportId, badCodes.size());
-
-            // 6. Цикл удаления кодов
-            while (!badCodes.isEmpty()) {
-                log.debug("[{}] Попытка удаления {} кодов", reportId, badCodes.size());
-                deleteCodesFromReport(reportId, badCodes);
+            codes = join(codesBranch);
+        } finally {
+            // Ничего не делает, если коды уже получены
+            codesBranch.cancel(true);
+        }
+        log.debug("[{}] Получено кодов: {}", reportId, codes.size());
+        if (codes.isEmpty()) {
+            log.warn("[{}] Нет кодов для обработки", reportId);
+            return Removal.RETRY_LATER;
+        }
 
-                // Обновляем список кодов после удаления
-                codes = getReportCodes(reportId);
-                badCodes = processContent(responseContent, codes);
+        // 5. Поиск кодов для удаления
+        List<String> badCodes = step(event, "match", () -> processCisList(cisList, codes));
+        log.info("[{}] Найдено кодов для удаления: {}", reportId, badCodes.size());
+
+        // 6. Удаление кодов частями и одна сверка результата
+        if (!badCodes.isEmpty()) {
+            boolean removed = step(event, "remove", () -> removalPlanner.execute(reportId, badCodes,
+                    chunk -> deleteCodesFromReport(reportId, chunk),
+                    () -> processCisList(cisList, getReportCodes(reportId))));
+            if (!removed) {
+                log.warn("[{}] Не удалось удалить проблемные коды за {} попыток, требуется ручная обработка",
+                        reportId, YamlUtil.removalMaxIterations);
+                return Removal.MANUAL;
             }
+        }
+        return new Removal(utilId, false);
+    }
 
-            // 7. Финализация обработки
-            acceptReport(utilId);
-            recalculateOrder(reportId, orderNumber);
-            log.info("[{}] Успешно обработан", reportId);
-
-        } catch (Exception e) {
-            log.error("[{}] Критическая ошибка обработки", reportId, e);
+    /**
+     * Ждет результат параллельной ветки обработки и пробрасывает ее исходное исключение.
+     */
+    private static <T> T join(Future<T> branch) throws Exception {
+        try {
+            return branch.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
         }
     }
 
     /**
-     * Получает список кодов из указанного отчета.
+     * Получает коды указанного отчета со всех страниц.
+     * Коды читаются потоком (из REST или из БД) и сразу складываются в индекс по ключу - части кода до первого
+     * разделителя GS, по которому они сопоставляются с ответом регулятора.
      *
      * @param reportId ID отчета для получения кодов
-     * @return список объектов CodeInfo с информацией о кодах
+     * @return индекс кодов отчета
      * @throws Exception при ошибках HTTP-запроса или парсинга ответа
      */
-    private List<CodeInfo> getReportCodes(String reportId) throws Exception {
-        HttpResponse<String> response = sendGetRequest(
-                YamlUtil.host + "/code-usage-processor/api/v2/code-usage-reports/" + reportId + "/codes?page=0&size=1000"
-        );
-
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("HTTP error: " + response.statusCode());
+    private CodeIndex getReportCodes(String reportId) throws Exception {
+        CodeIndex.Builder codes = new CodeIndex.Builder();
+        if (postgresReader != null) {
+            postgresReader.forEachCode(reportId, codes::add);
+        } else {
+            codesReader.forEachCode(reportId, codes::add);
         }
-
-        return objectMapper.readValue(
-                objectMapper.readTree(response.body()).get("content").traverse(),
-                new TypeReference<List<CodeInfo>>(){}
-        );
+        return codes.build();
     }
 
     /**
-     * Получает ID утиля, связанного с отчетом.
+     * Получает утили, связанные с отчетом.
      *
      * @param reportId ID отчета для поиска утиля
-     * @return ID утиля или null, если количество утилей не равно 1
+     * @return утили отчета
      * @throws Exception при ошибках HTTP-запроса или парсинга ответа
      */
-    private String getUtilIdForReport(String reportId) throws Exception {
-        HttpResponse<String> response = sendGetRequest(
-                YamlUtil.host + "/api/utilization-reports/" + reportId
+    private List<UtilizationReport> getUtilsForReport(String reportId) throws Exception {
+        HttpResponse<InputStream> response = sendGetStream(
+                host + "/api/utilization-reports/" + reportId
         );
 
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("HTTP error: " + response.statusCode());
+        List<UtilizationReport> utils;
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("HTTP error: " + response.statusCode());
+            }
+            utils = utilizationReportsReader.readValue(body);
         }
+        return utils;
+    }
 
-        JsonNode utils = objectMapper.readTree(response.body());
-        if (utils.size() != 1) {
-            log.info("[{}] Найдено {} утилей", reportId, utils.size());
-            return null;
+    /**
+     * @return ID единственного утиля отчета или null, если утилей нет (еще не созданы) или несколько
+     */
+    private static String singleUtilId(String reportId, List<UtilizationReport> utils) {
+        if (utils.size() == 1) {
+            return utils.get(0).getId();
+        }
+        if (utils.isEmpty()) {
+            log.warn("[{}] Утиль не найден", reportId);
+        } else {
+            log.warn("[{}] Найдено {} утилей, требуется ручная обработка", reportId, utils.size());
         }
-        return utils.get(0).get("id").asText();
+        return null;
     }
 
     /**
@@ -237,157 +855,103 @@ public class CheckReportsService {
      * @throws Exception при ошибках HTTP-запроса или парсинга ответа
      */
     private String getLatestResponsePath(String utilId) throws Exception {
-        HttpResponse<String> response = sendGetRequest(
-                YamlUtil.host + "/api/utilization-reports/" + utilId + "/attempts?page=0&size=100"
+        HttpResponse<InputStream> response = sendGetStream(
+                host + "/api/utilization-reports/" + utilId + "/attempts?page=0&size=100"
         );
 
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("HTTP error: " + response.statusCode());
+        AttemptsResponse attemptsResponse;
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("HTTP error: " + response.statusCode());
+            }
+            attemptsResponse = attemptsReader.readValue(body);
         }
-
-        AttemptsResponse attemptsResponse = objectMapper.readValue(response.body(), AttemptsResponse.class);
         return attemptsResponse.getContent().stream()
-                .max(Comparator.comparing(Attempt::getCreated))
+                .max(Comparator.comparingLong(Attempt::getCreatedNanos))
                 .map(Attempt::getResponsePath)
                 .orElse(null);
     }
 
     /**
-     * Получает и обрабатывает контент ответа регулятора по указанному пути.
+     * Получает и разбирает контент ответа регулятора по указанному пути.
+     * Сначала проверяет локальный кеш: ответ по одному пути не меняется.
      *
      * @param path путь к контенту ответа
-     * @return обработанный JSON-контент или пустую строку при ошибках
+     * @return записи cisList (пустой список, если регулятор не вернул кодов с ошибками)
+     * или null, если разобрать ответ не удалось
      * @throws Exception при ошибках HTTP-запроса
      */
-    private String getResponseContent(String path) throws Exception {
+    private List<CisEntry> getResponseContent(String path) throws Exception {
+        Optional<String> cached = contentCache.get(path);
+        if (cached.isPresent()) {
+            return regulatorDecoder.decode(cached.get());
+        }
+
         log.info("Запрос контента по пути: {}", path);
 
         HttpResponse<String> response = sendGetRequest(
-                YamlUtil.host + "/regulator-ru-adapter/api/utilization-reports/attempts/content?path="
+                host + "/regulator-ru-adapter/api/utilization-reports/attempts/content?path="
                         + URLEncoder.encode(path, StandardCharsets.UTF_8)
         );
         if (response.statusCode() != 200) {
-            log.error("Ошибка получения контента: {}", response.statusCode());
-            return "";
-        }
-        String rawResponse = response.body();
-
-        return getInnerJson(rawResponse);
-    }
-
-    String getInnerJson(String rawResponse) throws JsonProcessingException {
-        JsonNode content = objectMapper.readTree(rawResponse);
-        rawResponse = content.get("content").asText();
-
-        log.debug("Raw response: {}", rawResponse);
-
-        log.info("{}", rawResponse);
-        String[] parts = rawResponse.split("\\n\\n", 2);
-
-        if (parts.length < 2) {
-            log.error("Не удалось разделить заголовки и тело. Ответ: {}", rawResponse);
-            return "";
+            throw new RuntimeException("Ошибка получения контента: " + response.statusCode());
         }
 
-        String jsonBody = parts[1].trim();
-        log.debug("Извлеченное тело: {}", jsonBody);
-
-        try {
-            JsonNode rootNode = objectMapper.readTree(jsonBody);
-            JsonNode contentNode = rootNode.get("content");
-
-            if (contentNode == null || !contentNode.isTextual()) {
-                log.error("Некорректный формат поля content");
-                return "";
-            }
-
-            log.debug("{}", contentNode);
-            String innerJson = objectMapper.readValue(contentNode.traverse(), String.class);
-            log.debug("{}", innerJson);
-
-//            String innerJson = contentNode.asText()
-//                    .replace("\\\"", "\"")
-//                    .replace("\\\\", "\\");
-
-            objectMapper.readTree(innerJson);
-            return innerJson;
-        } catch (Exception e) {
-            log.error("Ошибка парсинга вложенного JSON. Тело: {}", jsonBody, e);
-            return "";
+        List<CisEntry> cisList = regulatorDecoder.decode(response.body());
+        if (cisList != null) {
+            contentCache.put(path, response.body());
         }
+        return cisList;
     }
 
     /**
-     * Анализирует контент ответа регулятора для выявления проблемных кодов.
+     * Извлекает вложенный JSON с cisList из ответа адаптера.
      *
-     * @param content  JSON-контент ответа регулятора
-     * @param dbCodes  список кодов из БД для сравнения
-     * @return список кодов, требующих удаления
+     * @param rawResponse тело ответа адаптера
+     * @return вложенный JSON или пустая строка при ошибках
      */
-    private List<String> processContent(String content, List<CodeInfo> dbCodes) {
-        try {
-            if (content == null || content.isEmpty()) {
-                return Collections.emptyList();
-            }
-
-            // Используем JsonNode вместо парсинга строки
-            JsonNode root = objectMapper.readTree(content);
-            return processJsonNode(root, dbCodes);
-
-        } catch (IOException e) {
-            log.error("Ошибка парсинга контента", e);
-            return Collections.emptyList();
-        }
+    String getInnerJson(String rawResponse) {
+        return regulatorDecoder.decodeInnerJson(rawResponse);
     }
 
-    private List<String> processJsonNode(JsonNode root, List<CodeInfo> dbCodes) {
-        JsonNode cisList = root.get("cisList");
-        if (cisList == null || !cisList.isArray()) {
-            return Collections.emptyList();
-        }
-
-        Map<String, String> codeMap = dbCodes.stream()
-                .collect(Collectors.toMap(
-                        c -> c.getCode().split("\u001d")[0],
-                        CodeInfo::getCode
-                ));
-
-        List<String> badCodes = new ArrayList<>();
-
-        cisList.forEach(cisEntry -> {
-            if (isDuplicateEntry(cisEntry)) {
-                processCisEntry(cisEntry, codeMap, badCodes);
-            }
-        });
-
-        return badCodes;
+    /**
+     * Анализирует записи ответа регулятора для выявления проблемных кодов.
+     * Большие списки сопоставляются параллельно в общем ForkJoinPool.
+     *
+     * @param cisList записи cisList из ответа регулятора
+     * @param codes   индекс кодов отчета
+     * @return список кодов, требующих удаления
+     */
+    static List<String> processCisList(List<CisEntry> cisList, CodeIndex codes) {
+        Stream<CisEntry> entries = cisList.size() >= PARALLEL_MATCH_THRESHOLD
+                ? cisList.parallelStream()
+                : cisList.stream();
+
+        return entries
+                .filter(CheckReportsService::isDuplicateEntry)
+                .map(cisEntry -> processCisEntry(cisEntry, codes))
+                .filter(Objects::nonNull)
+                .toList();
     }
 
-    private boolean isDuplicateEntry(JsonNode cisEntry) {
-        JsonNode descriptionNode = cisEntry.get("description");
-        return descriptionNode != null
-                && "Повторное нанесение кода".equals(descriptionNode.asText());
+    private static boolean isDuplicateEntry(CisEntry cisEntry) {
+        return "Повторное нанесение кода".equals(cisEntry.getDescription());
     }
 
-    private void processCisEntry(JsonNode cisEntry,
-                                 Map<String, String> codeMap,
-                                 List<String> badCodes) {
-        JsonNode cisNode = cisEntry.get("cis");
-        if (cisNode == null || !cisNode.isTextual()) return;
+    private static String processCisEntry(CisEntry cisEntry, CodeIndex codes) {
+        String cis = cisEntry.getCis();
+        if (cis == null) return null;
 
-        String cis = cisNode.asText();
-        String[] parts = cis.split("\u001d");
-        if (parts.length == 0) return;
+        int index = codes.find(cis);
+        if (index < 0) return null;
 
-        String codeKey = parts[0];
-        if (codeMap.containsKey(codeKey)) {
-            badCodes.add(codeMap.get(codeKey)
-                    .replace(" ", "\u001d"));
-        }
+        return codes.code(index).replace(" ", "\u001d");
     }
 
     /**
      * Удаляет указанные коды из отчета.
+     * Тело запроса от {@code http.requestCompressionMinBytes} байт сжимается в gzip;
+     * если сервер отвечает 415, запрос повторяется без сжатия и сжатие больше не используется.
      *
      * @param reportId ID отчета для модификации
      * @param codes    список кодов для удаления
@@ -399,26 +963,40 @@ public class CheckReportsService {
             return;
         }
 
-        String jsonBody = objectMapper.writeValueAsString(codes);
-        log.debug("[{}] Тело запроса DELETE: {}", reportId, jsonBody);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI(YamlUtil.host + "/code-usage-processor/api/v2/code-usage-reports/" + reportId + "/codes"))
-                .header("Authorization", "Bearer " + authService.getToken())
-                .header("Content-Type", "application/json")
-                .method("DELETE", HttpRequest.BodyPublishers.ofString(jsonBody))
-                .build();
-
-        HttpResponse<String> response = HttpClient.newHttpClient()
-                .send(request, HttpResponse.BodyHandlers.ofString());
+        String jsonBody = codesWriter.writeValueAsString(codes);
+        log.debug("[{}] Тело запроса DELETE: {}", reportId, LogPayload.of(jsonBody));
+        byte[] body = jsonBody.getBytes(StandardCharsets.UTF_8);
+
+        boolean compress = YamlUtil.httpRequestCompressionMinBytes > 0
+                && body.length >= YamlUtil.httpRequestCompressionMinBytes
+                && !requestCompressionRejected;
+        HttpResponse<String> response = sendDeleteCodes(reportId, body, compress);
+        if (compress && response.statusCode() == 415) {
+            log.warn("[{}] Сервер не принимает сжатое тело запроса, дальше отправляем без сжатия", reportId);
+            requestCompressionRejected = true;
+            response = sendDeleteCodes(reportId, body, false);
+        }
 
-        log.debug("[{}] Ответ DELETE: {} {}", reportId, response.statusCode(), response.body());
+        log.debug("[{}] Ответ DELETE: {} {}", reportId, response.statusCode(), LogPayload.of(response.body()));
 
         if (response.statusCode() != 200) {
-            throw new RuntimeException("Ошибка удаления кодов: " + response.body());
+            throw new RuntimeException("Ошибка удаления кодов: " + LogPayload.truncate(response.body()));
         }
     }
 
+    private HttpResponse<String> sendDeleteCodes(String reportId, byte[] body, boolean compress) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(new URI(host + "/code-usage-processor/api/v2/code-usage-reports/" + reportId + "/codes"))
+                .header("Content-Type", "application/json");
+        if (compress) {
+            request.header("Content-Encoding", "gzip")
+                    .method("DELETE", HttpRequest.BodyPublishers.ofByteArray(HttpCompression.gzip(body)));
+        } else {
+            request.method("DELETE", HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+        return authService.sendAuthorized(request, HttpCompression.ofString());
+    }
+
     /**
      * Подтверждает успешную обработку отчета, его принятием для дальнейшего создания
      * ввода в оборот
@@ -427,15 +1005,13 @@ public class CheckReportsService {
      * @throws Exception при ошибках HTTP-запроса
      */
     private void acceptReport(String utilId) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI(YamlUtil.host + "/code-usage-processor/api/code-usage-reports/accept-reports"))
-                .header("Authorization", "Bearer " + authService.getToken())
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(new URI(host + "/code-usage-processor/api/code-usage-reports/accept-reports"))
                 .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString("[\"" + utilId + "\"]"))
-                .build();
+                .POST(HttpRequest.BodyPublishers.ofString("[\"" + utilId + "\"]"));
 
-        HttpResponse<Void> response = HttpClient.newHttpClient()
-                .send(request, HttpResponse.BodyHandlers.discarding());
+        HttpResponse<Void> response = authService.sendAuthorized(
+                request, HttpResponse.BodyHandlers.discarding());
 
         if (response.statusCode() != 200) {
             throw new RuntimeException("Ошибка принятия отчета: " + response.statusCode());
@@ -444,6 +1020,7 @@ public class CheckReportsService {
 
     /**
      * Инициирует пересчет счетчиков для заказа.
+     * Пересчеты одного заказа из параллельно обрабатываемых отчетов выполняются по очереди.
      *
      * @param reportId    ID отчета
      * @param orderNumber номер связанного заказа
@@ -457,14 +1034,19 @@ public class CheckReportsService {
             throw new RuntimeException("Не удалось определить номер заказа");
         }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI(YamlUtil.host + "/api/manufacturing-order-process/" + orderNumber + "/recalculate"))
-                .header("Authorization", "Bearer " + authService.getToken())
-                .PUT(HttpRequest.BodyPublishers.noBody())
-                .build();
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(new URI(host + "/api/manufacturing-order-process/" + orderNumber + "/recalculate"))
+                .PUT(HttpRequest.BodyPublishers.noBody());
 
-        HttpResponse<Void> response = HttpClient.newHttpClient()
-                .send(request, HttpResponse.BodyHandlers.discarding());
+        Lock orderLock = orderLocks.get(orderNumber);
+        orderLock.lock();
+        HttpResponse<Void> response;
+        try {
+            response = authService.sendAuthorized(
+                    request, HttpResponse.BodyHandlers.discarding());
+        } finally {
+            orderLock.unlock();
+        }
 
         if (response.statusCode() != 200) {
             throw new RuntimeException("Ошибка пересчета счетчиков: " + response.statusCode());
@@ -479,15 +1061,17 @@ public class CheckReportsService {
      * @throws Exception при ошибках HTTP-запроса или отсутствии данных
      */
     private String getOrderNumber(String reportId) throws Exception {
-        HttpResponse<String> response = sendGetRequest(
-                YamlUtil.host + "/code-usage-processor/api/v2/code-usage-reports/" + reportId
+        HttpResponse<InputStream> response = sendGetStream(
+                host + "/code-usage-processor/api/v2/code-usage-reports/" + reportId
         );
 
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("Ошибка получения данных отчета: " + response.statusCode());
+        JsonNode root;
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("Ошибка получения данных отчета: " + response.statusCode());
+            }
+            root = JsonCodec.treeReader().readTree(body);
         }
-
-        JsonNode root = objectMapper.readTree(response.body());
         JsonNode orderNumberNode = root.get("orderId");
 
         if (orderNumberNode == null || orderNumberNode.isNull()) {
@@ -499,19 +1083,35 @@ public class CheckReportsService {
 
     /**
      * Вспомогательный метод для выполнения HTTP GET запросов.
+     * Ответ может приходить сжатым, тело отдается распакованным.
      *
      * @param url целевой URL запроса
      * @return объект HTTP-ответа
      * @throws Exception при ошибках выполнения запроса
      */
     private HttpResponse<String> sendGetRequest(String url) throws Exception {
-        return HttpClient.newHttpClient().send(
+        return authService.sendAuthorized(
+                HttpRequest.newBuilder()
+                        .uri(new URI(url))
+                        .GET(),
+                HttpCompression.ofString()
+        );
+    }
+
+    /**
+     * Выполняет HTTP GET запрос и отдает тело потоком, который распаковывается по мере чтения.
+     * Поток нужно закрыть.
+     *
+     * @param url целевой URL запроса
+     * @return объект HTTP-ответа
+     * @throws Exception при ошибках выполнения запроса
+     */
+    private HttpResponse<InputStream> sendGetStream(String url) throws Exception {
+        return authService.sendAuthorized(
                 HttpRequest.newBuilder()
                         .uri(new URI(url))
-                        .header("Authorization", "Bearer " + authService.getToken())
-                        .GET()
-                        .build(),
-                HttpResponse.BodyHandlers.ofString()
+                        .GET(),
+                HttpCompression.ofInputStream()
         );
     }
 
@@ -523,7 +1123,7 @@ public class CheckReportsService {
      * @throws IOException при ошибках парсинга
      */
     private ReportsResponse parseResponse(String json) throws IOException {
-        return objectMapper.readValue(json, ReportsResponse.class);
+        return reportsReader.readValue(json);
     }
 
     /**
@@ -535,4 +1135,38 @@ public class CheckReportsService {
     public void sentToCancel(String reportId) throws Exception {
         cancelService.cancel(reportId);
     }
+
+    /**
+     * Закрывает журнал работ, пул соединений с БД и HTTP-транспорт.
+     */
+    public void close() {
+        if (coordinator != null) {
+            coordinator.close();
+        }
+        if (database != null) {
+            database.close();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("Ошибка закрытия журнала работ", e);
+        }
+        branches.close();
+        transport.close();
+    }
+
+    /**
+     * Итог поиска и удаления кодов: ID утиля, если обработку можно продолжить,
+     * иначе признак, требуется ли ручная обработка или отчет нужно повторить позже.
+     */
+    private record Removal(String utilId, boolean manual) {
+        static final Removal RETRY_LATER = new Removal(null, false);
+        static final Removal MANUAL = new Removal(null, true);
+    }
+
+    /**
+     * Полный дубликат, ожидающий массовой отмены, и событие его обработки.
+     */
+    private record PendingCancel(ContentItem item, ReportEvent event) {
+    }
 }
\ No newline at end of file
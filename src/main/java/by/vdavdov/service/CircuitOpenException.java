@@ -0,0 +1,14 @@
+package by.vdavdov.service;
+
+import java.io.IOException;
+
+/**
+ * Запрос не выполнялся: цепь группы эндпоинтов разомкнута после серии ошибок.
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String endpointGroup) {
+        super("Запросы к " + endpointGroup + " временно приостановлены после серии ошибок");
+    }
+}
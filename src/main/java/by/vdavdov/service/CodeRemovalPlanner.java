@@ -0,0 +1,77 @@
+package by.vdavdov.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Планирует удаление проблемных кодов из отчета.
+ * Полный список кодов считается один раз и отправляется частями ограниченного размера,
+ * после чего результат проверяется одной сверкой. Если сервер оставил часть кодов,
+ * удаляются только они; число итераций ограничено, чтобы не крутиться бесконечно.
+ */
+public class CodeRemovalPlanner {
+    private static final Logger log = LogManager.getLogger(CodeRemovalPlanner.class);
+
+    private final int chunkSize;
+    private final int maxIterations;
+
+    public CodeRemovalPlanner(int chunkSize, int maxIterations) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxIterations = Math.max(1, maxIterations);
+    }
+
+    /**
+     * Удаляет коды и проверяет результат.
+     *
+     * @param reportId  ID отчета
+     * @param badCodes  коды для удаления
+     * @param remover   удаление одной части кодов
+     * @param remaining сверка: какие из проблемных кодов еще остались в отчете
+     * @return true, если после удаления проблемных кодов не осталось
+     * @throws Exception при ошибках удаления или сверки
+     */
+    public boolean execute(String reportId,
+                           List<String> badCodes,
+                           ChunkRemover remover,
+                           RemainingCodes remaining) throws Exception {
+        List<String> codes = badCodes;
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            List<List<String>> chunks = chunks(codes, chunkSize);
+            log.debug("[{}] Итерация {}: удаление {} кодов в {} запросах", reportId, iteration, codes.size(), chunks.size());
+            for (List<String> chunk : chunks) {
+                remover.remove(chunk);
+            }
+
+            codes = remaining.find();
+            if (codes.isEmpty()) {
+                return true;
+            }
+            log.warn("[{}] После итерации {} в отчете осталось {} проблемных кодов", reportId, iteration, codes.size());
+        }
+        return false;
+    }
+
+    /**
+     * Делит список на последовательные части не больше заданного размера.
+     */
+    static List<List<String>> chunks(List<String> codes, int chunkSize) {
+        List<List<String>> chunks = new ArrayList<>((codes.size() + chunkSize - 1) / chunkSize);
+        for (int from = 0; from < codes.size(); from += chunkSize) {
+            chunks.add(codes.subList(from, Math.min(codes.size(), from + chunkSize)));
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    public interface ChunkRemover {
+        void remove(List<String> codes) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface RemainingCodes {
+        List<String> find() throws Exception;
+    }
+}
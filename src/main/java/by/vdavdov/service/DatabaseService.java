@@ -0,0 +1,46 @@
+package by.vdavdov.service;
+
+import by.vdavdov.utils.YamlUtil;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Пул соединений с PostgreSQL на HikariCP.
+ * Используется только при {@code datasource.enabled: true}.
+ */
+public class DatabaseService implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(DatabaseService.class);
+
+    private final HikariDataSource dataSource;
+
+    public DatabaseService() {
+        this(YamlUtil.datasourceUrl, YamlUtil.datasourceUsername, YamlUtil.datasourcePassword, YamlUtil.datasourcePoolSize);
+    }
+
+    public DatabaseService(String url, String username, String password, int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        config.setPoolName("multon-db");
+        // Строковые параметры передаются без типа, чтобы сервер сам приводил их к uuid и timestamptz
+        config.addDataSourceProperty("stringtype", "unspecified");
+        config.addDataSourceProperty("ApplicationName", "multon-cancel-dupl");
+        this.dataSource = new HikariDataSource(config);
+        log.info("Пул соединений с БД создан: {}, размер {}", url, poolSize);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
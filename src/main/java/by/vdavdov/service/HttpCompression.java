@@ -0,0 +1,164 @@
+package by.vdavdov.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Обработчики тела ответа с поддержкой сжатия gzip и deflate.
+ * <p>
+ * Для запросов с такими обработчиками {@link HttpTransport} добавляет заголовок
+ * {@code Accept-Encoding: gzip, deflate} (при {@code http.compression: true}).
+ * Тело распаковывается по заголовку Content-Encoding ответа; ответ без сжатия
+ * отдается как есть. Поток из {@link #ofInputStream()} распаковывается по мере чтения,
+ * поэтому парсер JSON читает его напрямую, не собирая ответ в памяти.
+ */
+public final class HttpCompression {
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private HttpCompression() {
+    }
+
+    /**
+     * @return обработчик, собирающий распакованное тело в строку в кодировке из Content-Type (по умолчанию UTF-8)
+     */
+    public static HttpResponse.BodyHandler<String> ofString() {
+        return new DecodingHandler<>(info -> {
+            String encoding = encodingOf(info);
+            Charset charset = charsetOf(info);
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+                if (encoding == null) {
+                    return new String(bytes, charset);
+                }
+                try (InputStream decoded = decode(new ByteArrayInputStream(bytes), encoding)) {
+                    return new String(decoded.readAllBytes(), charset);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        });
+    }
+
+    /**
+     * @return обработчик, отдающий тело потоком, который распаковывается по мере чтения
+     */
+    public static HttpResponse.BodyHandler<InputStream> ofInputStream() {
+        return new DecodingHandler<>(info -> {
+            String encoding = encodingOf(info);
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                    body -> encoding == null ? body : new DecodingInputStream(body, encoding));
+        });
+    }
+
+    /**
+     * Сжимает тело запроса в gzip.
+     *
+     * @param body тело запроса
+     * @return сжатое тело
+     */
+    public static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return способ сжатия из Content-Encoding в нижнем регистре или null, если ответ не сжат
+     */
+    private static String encodingOf(HttpResponse.ResponseInfo info) {
+        return info.headers().firstValue("Content-Encoding")
+                .map(value -> value.trim().toLowerCase(Locale.ROOT))
+                .filter(value -> !value.isEmpty() && !value.equals("identity"))
+                .orElse(null);
+    }
+
+    private static Charset charsetOf(HttpResponse.ResponseInfo info) {
+        String contentType = info.headers().firstValue("Content-Type").orElse("");
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].equalsIgnoreCase("charset")) {
+                try {
+                    return Charset.forName(pair[1].replace("\"", "").trim());
+                } catch (IllegalArgumentException e) {
+                    return StandardCharsets.UTF_8;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body, 8192);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> throw new IOException("Неподдерживаемое сжатие ответа: " + encoding);
+        };
+    }
+
+    /**
+     * Обработчик, умеющий распаковывать ответ. По этому типу {@link HttpTransport}
+     * решает, можно ли запрашивать сжатый ответ.
+     */
+    record DecodingHandler<T>(Function<HttpResponse.ResponseInfo, HttpResponse.BodySubscriber<T>> factory)
+            implements HttpResponse.BodyHandler<T> {
+        @Override
+        public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo responseInfo) {
+            return factory.apply(responseInfo);
+        }
+    }
+
+    /**
+     * Распаковывающий поток, создаваемый при первом чтении: заголовок gzip читается
+     * из тела, а читать тело в потоке HTTP-клиента, где вызывается mapping, нельзя.
+     */
+    private static final class DecodingInputStream extends InputStream {
+        private final InputStream body;
+        private final String encoding;
+        private InputStream decoded;
+
+        DecodingInputStream(InputStream body, String encoding) {
+            this.body = body;
+            this.encoding = encoding;
+        }
+
+        private InputStream decoded() throws IOException {
+            if (decoded == null) {
+                decoded = decode(body, encoding);
+            }
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoded().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return decoded().read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoded != null) {
+                decoded.close();
+            } else {
+                body.close();
+            }
+        }
+    }
+}
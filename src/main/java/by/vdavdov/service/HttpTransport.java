@@ -0,0 +1,279 @@
+package by.vdavdov.service;
+
+import by.vdavdov.utils.AdaptiveLimiter;
+import by.vdavdov.utils.CircuitBreaker;
+import by.vdavdov.utils.Metrics;
+import by.vdavdov.utils.YamlUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий HTTP-транспорт для всех исходящих запросов.
+ * Держит один HttpClient (HTTP/2 с откатом на HTTP/1.1), поэтому соединения
+ * переиспользуются между запросами, а не открываются заново на каждый вызов.
+ * <p>
+ * Для каждой группы эндпоинтов (auth, code-usage-processor, api/utilization-reports,
+ * regulator-ru-adapter, api/manufacturing-order-process) число одновременных запросов
+ * ограничивается адаптивным лимитом, который растет при стабильной задержке и
+ * снижается при 429/503, таймаутах и росте задержки.
+ * <p>
+ * GET-запросы при сетевых ошибках, 429 и 5xx повторяются с экспоненциальной задержкой
+ * со случайным разбросом. После серии ошибок подряд цепь группы размыкается, и запросы
+ * к ней сразу завершаются {@link CircuitOpenException}, не нагружая сервер.
+ */
+public class HttpTransport {
+    private static final Logger log = LogManager.getLogger(HttpTransport.class);
+
+    private final String target;
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param target имя цели для меток метрик
+     */
+    public HttpTransport(String target) {
+        this.target = target;
+        this.executor = Executors.newFixedThreadPool(YamlUtil.httpExecutorThreads, daemonThreadFactory());
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(YamlUtil.httpConnectTimeout))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        log.info("HTTP-транспорт создан: connectTimeout={}s, requestTimeout={}s, запросов на хост={}, потоков={}",
+                YamlUtil.httpConnectTimeout, YamlUtil.httpRequestTimeout,
+                YamlUtil.httpMaxRequestsPerHost, YamlUtil.httpExecutorThreads);
+    }
+
+    /**
+     * Задает время жизни простаивающих соединений {@code http.keepAlive}.
+     * Свойства jdk.httpclient.* общие для JVM и читаются при загрузке реализации HttpClient,
+     * поэтому вызывается один раз при старте, до создания первого транспорта.
+     * Если свойство уже задано флагом -D, оно не переопределяется.
+     */
+    public static void configureKeepAlive() {
+        if (YamlUtil.httpKeepAlive > 0) {
+            String seconds = String.valueOf(YamlUtil.httpKeepAlive);
+            if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+                System.setProperty("jdk.httpclient.keepalive.timeout", seconds);
+            }
+            if (System.getProperty("jdk.httpclient.keepalive.timeout.h2") == null) {
+                System.setProperty("jdk.httpclient.keepalive.timeout.h2", seconds);
+            }
+        }
+    }
+
+    /**
+     * Выполняет запрос через общий клиент.
+     * Количество запросов к одному хосту, ожидающих заголовков ответа, ограничено {@code http.maxRequestsPerHost}.
+     * Разрешение возвращается при получении заголовков, чтение тела ответа в лимит не входит.
+     * GET-запросы повторяются до {@code retry.maxAttempts} раз.
+     * Если обработчик умеет распаковывать ответ (см. {@link HttpCompression}), запрашивается сжатый ответ.
+     *
+     * @param builder     подготовленный запрос
+     * @param bodyHandler обработчик тела ответа
+     * @return объект HTTP-ответа
+     * @throws IOException          при ошибках ввода-вывода или разомкнутой цепи
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public <T> HttpResponse<T> send(HttpRequest.Builder builder,
+                                    HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        if (YamlUtil.httpCompression && bodyHandler instanceof HttpCompression.DecodingHandler) {
+            builder.setHeader("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+        }
+        HttpRequest request = builder
+                .timeout(Duration.ofSeconds(YamlUtil.httpRequestTimeout))
+                .build();
+        String group = endpointGroup(request.uri());
+        CircuitBreaker breaker = breakers.computeIfAbsent(group, key -> {
+            CircuitBreaker created = new CircuitBreaker(YamlUtil.circuitFailureThreshold, YamlUtil.circuitOpenSeconds * 1000L);
+            Metrics.gauge("multon_http_circuit_open",
+                    () -> created.getState() == CircuitBreaker.State.CLOSED ? 0 : 1, "target", target, "endpoint", key);
+            return created;
+        });
+        int maxAttempts = request.method().equals("GET") ? Math.max(1, YamlUtil.retryMaxAttempts) : 1;
+
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                throw new CircuitOpenException(group);
+            }
+
+            HttpResponse<T> response;
+            try {
+                response = sendLimited(group, request, bodyHandler);
+            } catch (IOException e) {
+                breaker.onFailure();
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Ошибка запроса {} (попытка {} из {}): {}", request.uri(), attempt, maxAttempts, e.toString());
+                Metrics.counter("multon_http_retries_total", "target", target, "endpoint", group).increment();
+                Thread.sleep(backoffMillis(attempt));
+                continue;
+            } catch (InterruptedException | RuntimeException | Error e) {
+                // Прерванный запрос ничего не говорит о сервере, но пробный запрос должен быть завершен,
+                // иначе полуоткрытая цепь не пропустит больше ни одного запроса
+                breaker.release();
+                throw e;
+            }
+
+            int status = response.statusCode();
+            // Любая 5xx говорит о сбое сервера, даже если повторять такой запрос нет смысла
+            if (status >= 500 || status == 429) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            if (!isRetryableStatus(status) || attempt >= maxAttempts) {
+                return response;
+            }
+            log.warn("Ответ {} на {} (попытка {} из {})", status, request.uri(), attempt, maxAttempts);
+            Metrics.counter("multon_http_retries_total", "target", target, "endpoint", group).increment();
+            if (response.body() instanceof AutoCloseable body) {
+                try {
+                    body.close();
+                } catch (Exception ignored) {
+                    // тело ответа больше не нужно
+                }
+            }
+            Thread.sleep(Math.max(backoffMillis(attempt), retryAfterMillis(response)));
+        }
+    }
+
+    private <T> HttpResponse<T> sendLimited(String group, HttpRequest request,
+                                            HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        AdaptiveLimiter limiter = limiters.computeIfAbsent(group, key -> {
+            AdaptiveLimiter created = new AdaptiveLimiter(YamlUtil.limiterInitialLimit, YamlUtil.limiterMinLimit,
+                    YamlUtil.limiterMaxLimit, YamlUtil.limiterLatencyTolerance);
+            Metrics.gauge("multon_http_concurrency_limit", created::getLimit, "target", target, "endpoint", key);
+            return created;
+        });
+        Semaphore permits = hostPermits.computeIfAbsent(request.uri().getHost(),
+                host -> new Semaphore(YamlUtil.httpMaxRequestsPerHost, true));
+
+        long ticket = limiter.acquire();
+        long started = System.nanoTime();
+        try {
+            permits.acquire();
+            HttpResponse<T> response;
+            try {
+                response = client.send(request, bodyHandler);
+            } finally {
+                permits.release();
+            }
+            long latency = System.nanoTime() - started;
+            int status = response.statusCode();
+            limiter.release(ticket, latency, status == 429 || status == 503);
+            Metrics.histogram("multon_http_request_seconds", "target", target, "endpoint", group).recordNanos(latency);
+            Metrics.counter("multon_http_responses_total", "target", target, "endpoint", group, "status", String.valueOf(status)).increment();
+            return response;
+        } catch (HttpTimeoutException e) {
+            limiter.release(ticket, System.nanoTime() - started, true);
+            Metrics.counter("multon_http_responses_total", "target", target, "endpoint", group, "status", "timeout").increment();
+            throw e;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            limiter.release(ticket);
+            Metrics.counter("multon_http_responses_total", "target", target, "endpoint", group, "status", "error").increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Задержка перед повтором: случайное значение от половины до полной
+     * экспоненциальной задержки {@code retry.baseDelayMillis * 2^(attempt-1)},
+     * но не больше {@code retry.maxDelayMillis}.
+     */
+    static long backoffMillis(int attempt) {
+        long delay = Math.min(YamlUtil.retryMaxDelayMillis,
+                (long) YamlUtil.retryBaseDelayMillis << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        return response.headers().firstValue("Retry-After")
+                .map(value -> {
+                    try {
+                        return Math.min(YamlUtil.retryMaxDelayMillis, Long.parseLong(value.trim()) * 1000);
+                    } catch (NumberFormatException e) {
+                        return 0L;
+                    }
+                })
+                .orElse(0L);
+    }
+
+    private static boolean isRetryableStatus(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * @return текущие лимиты одновременных запросов по группам эндпоинтов
+     */
+    public Map<String, Integer> limits() {
+        Map<String, Integer> limits = new TreeMap<>();
+        limiters.forEach((group, limiter) -> limits.put(group, limiter.getLimit()));
+        return limits;
+    }
+
+    /**
+     * @return сколько миллисекунд еще будет разомкнута самая долгая из цепей, 0 - если разомкнутых нет
+     */
+    public long circuitOpenRemainingMillis() {
+        return breakers.values().stream().mapToLong(CircuitBreaker::remainingOpenMillis).max().orElse(0);
+    }
+
+    /**
+     * Определяет группу эндпоинтов по пути запроса: первый сегмент пути,
+     * а для путей /api/... - первые два сегмента.
+     *
+     * @param uri адрес запроса
+     * @return имя группы, например code-usage-processor или api/utilization-reports
+     */
+    static String endpointGroup(URI uri) {
+        String path = uri.getPath();
+        if (path == null || path.length() <= 1) {
+            return "/";
+        }
+        String[] segments = path.substring(1).split("/", 3);
+        if (segments[0].equals("api") && segments.length > 1) {
+            return segments[0] + "/" + segments[1];
+        }
+        return segments[0];
+    }
+
+    /**
+     * Останавливает пул потоков клиента.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "http-transport-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
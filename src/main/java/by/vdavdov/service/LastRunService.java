@@ -10,7 +10,11 @@ import org.apache.logging.log4j.Logger;
 
 public class LastRunService {
     private static final Logger log = LogManager.getLogger(LastRunService.class);
-    private static final String STATE_FILE = "last_run.txt";
+    private final Path stateFile;
+
+    public LastRunService(Path stateFile) {
+        this.stateFile = stateFile;
+    }
 
     /**
      * Отдает время последней проверки (чтобы не проверять все снова)
@@ -19,8 +23,8 @@ public class LastRunService {
      */
     public Instant getLastRunTime() {
         try {
-            if (Files.exists(Path.of(STATE_FILE))) {
-                String time = Files.readString(Path.of(STATE_FILE));
+            if (Files.exists(stateFile)) {
+                String time = Files.readString(stateFile);
                 return Instant.parse(time);
             }
         } catch (IOException e) {
@@ -34,7 +38,11 @@ public class LastRunService {
      */
     public void saveLastRunTime(Instant time) {
         try {
-            Files.writeString(Path.of(STATE_FILE), time.toString());
+            Path parent = stateFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(stateFile, time.toString());
         } catch (IOException e) {
             log.error("Ошибка сохранения времени запуска", e);
         }
@@ -0,0 +1,372 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ContentItem;
+import by.vdavdov.model.ReportStage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Распределение отчетов между несколькими экземплярами сервиса через PostgreSQL.
+ * <p>
+ * Найденные отчеты складываются в общую таблицу multon_report_lease, откуда экземпляры
+ * забирают их пачками через {@code FOR UPDATE SKIP LOCKED}: каждый отчет получает
+ * аренду с владельцем и сроком, и два экземпляра никогда не берут один отчет.
+ * Пока отчет в работе, аренда продлевается фоновым heartbeat. Аренды упавшего
+ * экземпляра истекают, и отчеты забирают остальные.
+ * <p>
+ * Время последнего запуска хранится в multon_watermark и тоже выдается в аренду:
+ * поиск новых отчетов в каждый момент выполняет только один экземпляр.
+ * Завершенные отчеты остаются в таблице и повторно попадают в очередь только
+ * через {@code reopenAfter} после завершения.
+ */
+public final class LeaseCoordinator implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(LeaseCoordinator.class);
+
+    private static final String CREATE_LEASES =
+            "CREATE TABLE IF NOT EXISTS multon_report_lease (target text NOT NULL, report_id text NOT NULL,"
+                    + " rejection_reason text, order_number text, stage text, done boolean NOT NULL DEFAULT false,"
+                    + " owner text, lease_until timestamptz, updated timestamptz NOT NULL DEFAULT now(),"
+                    + " PRIMARY KEY (target, report_id))";
+    private static final String CREATE_PENDING_INDEX =
+            "CREATE INDEX IF NOT EXISTS multon_report_lease_pending ON multon_report_lease (target, updated) WHERE NOT done";
+    private static final String CREATE_WATERMARK =
+            "CREATE TABLE IF NOT EXISTS multon_watermark (target text PRIMARY KEY, last_run timestamptz NOT NULL,"
+                    + " owner text, lease_until timestamptz)";
+
+    private static final String OFFER =
+            "INSERT INTO multon_report_lease (target, report_id, rejection_reason, order_number) VALUES (?, ?, ?, ?)"
+                    + " ON CONFLICT (target, report_id) DO UPDATE SET done = false, stage = null,"
+                    + " rejection_reason = excluded.rejection_reason, order_number = excluded.order_number, updated = now()"
+                    + " WHERE multon_report_lease.done AND multon_report_lease.updated < now() - ? * interval '1 second'";
+    private static final String CLAIM =
+            "UPDATE multon_report_lease l SET owner = ?, lease_until = now() + ? * interval '1 second'"
+                    + " FROM (SELECT target, report_id FROM multon_report_lease"
+                    + " WHERE target = ? AND NOT done AND (lease_until IS NULL OR lease_until < now())"
+                    + " ORDER BY updated LIMIT ? FOR UPDATE SKIP LOCKED) c"
+                    + " WHERE l.target = c.target AND l.report_id = c.report_id"
+                    + " RETURNING l.report_id, l.rejection_reason, l.order_number, l.stage";
+    private static final String PROGRESS =
+            "UPDATE multon_report_lease SET stage = ? WHERE target = ? AND report_id = ? AND owner = ?";
+    private static final String COMPLETE =
+            "UPDATE multon_report_lease SET done = true, stage = ?, owner = null, lease_until = null, updated = now()"
+                    + " WHERE target = ? AND report_id = ? AND owner = ?";
+    private static final String RELEASE =
+            "UPDATE multon_report_lease SET owner = null, lease_until = now() + ? * interval '1 second', updated = now()"
+                    + " WHERE target = ? AND report_id = ? AND owner = ?";
+    private static final String RELEASE_ALL =
+            "UPDATE multon_report_lease SET owner = null, lease_until = null WHERE target = ? AND owner = ? AND NOT done";
+    private static final String HEARTBEAT =
+            "UPDATE multon_report_lease SET lease_until = now() + ? * interval '1 second'"
+                    + " WHERE target = ? AND owner = ? AND NOT done";
+
+    private static final String INIT_WATERMARK =
+            "INSERT INTO multon_watermark (target, last_run) VALUES (?, ?) ON CONFLICT (target) DO NOTHING";
+    private static final String LOCK_WATERMARK =
+            "SELECT last_run FROM multon_watermark WHERE target = ?"
+                    + " AND (owner IS NULL OR owner = ? OR lease_until < now()) FOR UPDATE SKIP LOCKED";
+    private static final String TAKE_WATERMARK =
+            "UPDATE multon_watermark SET owner = ?, lease_until = now() + ? * interval '1 second' WHERE target = ?";
+    private static final String ADVANCE_WATERMARK =
+            "UPDATE multon_watermark SET last_run = greatest(last_run, ?), owner = null, lease_until = null"
+                    + " WHERE target = ? AND owner = ?";
+    private static final String RELEASE_WATERMARK =
+            "UPDATE multon_watermark SET owner = null, lease_until = null WHERE target = ? AND owner = ?";
+    private static final String HEARTBEAT_WATERMARK =
+            "UPDATE multon_watermark SET lease_until = now() + ? * interval '1 second' WHERE target = ? AND owner = ?";
+
+    private final DataSource dataSource;
+    private final String target;
+    private final String instanceId;
+    private final int leaseSeconds;
+    private final long reopenAfterSeconds;
+    private final ScheduledExecutorService heartbeat;
+
+    /**
+     * @param dataSource       пул соединений
+     * @param target           имя цели, отчеты разных целей не пересекаются
+     * @param instanceId       уникальное имя экземпляра, владелец аренд
+     * @param leaseSeconds     срок аренды без продления
+     * @param heartbeatSeconds период продления аренд, должен быть заметно меньше срока аренды
+     * @param reopenAfter      через сколько после завершения отчет может снова попасть в очередь
+     */
+    public LeaseCoordinator(DataSource dataSource, String target, String instanceId,
+                            int leaseSeconds, int heartbeatSeconds, Duration reopenAfter) throws SQLException {
+        this.dataSource = dataSource;
+        this.target = target;
+        this.instanceId = instanceId;
+        this.leaseSeconds = leaseSeconds;
+        this.reopenAfterSeconds = reopenAfter.toSeconds();
+        createTables();
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-heartbeat-" + target);
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        log.info("Координация через БД включена: цель {}, экземпляр {}, аренда {} с, продление каждые {} с",
+                target, instanceId, leaseSeconds, heartbeatSeconds);
+    }
+
+    /**
+     * @return имя экземпляра по умолчанию: имя хоста (в Kubernetes - имя пода) и PID
+     */
+    public static String defaultInstanceId() {
+        String host = System.getenv("HOSTNAME");
+        return (host == null || host.isBlank() ? "local" : host) + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * Берет в аренду право искать новые отчеты.
+     * Если общего времени последнего запуска еще нет, оно заполняется переданным.
+     *
+     * @param initial время последнего запуска для первого запуска цели
+     * @return время последнего запуска или null, если поиск сейчас выполняет другой экземпляр
+     * @throws SQLException при ошибках запроса
+     */
+    public Instant acquireWatermark(Instant initial) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement statement = connection.prepareStatement(INIT_WATERMARK)) {
+                    statement.setString(1, target);
+                    statement.setTimestamp(2, Timestamp.from(initial));
+                    statement.executeUpdate();
+                }
+                Instant lastRun = null;
+                try (PreparedStatement statement = connection.prepareStatement(LOCK_WATERMARK)) {
+                    statement.setString(1, target);
+                    statement.setString(2, instanceId);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (resultSet.next()) {
+                            lastRun = resultSet.getTimestamp(1).toInstant();
+                        }
+                    }
+                }
+                if (lastRun != null) {
+                    try (PreparedStatement statement = connection.prepareStatement(TAKE_WATERMARK)) {
+                        statement.setString(1, instanceId);
+                        statement.setInt(2, leaseSeconds);
+                        statement.setString(3, target);
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+                return lastRun;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Возвращает право поиска отчетов.
+     *
+     * @param lastRun новое время последнего запуска или null, если поиск завершился с ошибками
+     *                и время сдвигать нельзя
+     */
+    public void releaseWatermark(Instant lastRun) {
+        if (lastRun == null) {
+            update(RELEASE_WATERMARK, statement -> {
+                statement.setString(1, target);
+                statement.setString(2, instanceId);
+            });
+            return;
+        }
+        update(ADVANCE_WATERMARK, statement -> {
+            statement.setTimestamp(1, Timestamp.from(lastRun));
+            statement.setString(2, target);
+            statement.setString(3, instanceId);
+        });
+    }
+
+    /**
+     * Добавляет найденные отчеты в общую очередь.
+     * Отчеты, которые уже в очереди или завершены недавно, пропускаются.
+     *
+     * @param items найденные отчеты
+     * @return количество новых отчетов в очереди
+     * @throws SQLException при ошибках запроса
+     */
+    public int offer(List<ContentItem> items) throws SQLException {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(OFFER)) {
+            for (ContentItem item : items) {
+                statement.setString(1, target);
+                statement.setString(2, item.getId());
+                statement.setString(3, item.getRejectionReason());
+                statement.setString(4, item.getOrderNumber());
+                statement.setLong(5, reopenAfterSeconds);
+                statement.addBatch();
+            }
+            int added = 0;
+            for (int rows : statement.executeBatch()) {
+                added += Math.max(0, rows);
+            }
+            return added;
+        }
+    }
+
+    /**
+     * Берет в аренду очередную пачку отчетов: свободных или с истекшей арендой.
+     *
+     * @param limit максимальный размер пачки
+     * @return отчеты с этапом, до которого их довел предыдущий владелец; пустой список, если очередь пуста
+     * @throws SQLException при ошибках запроса
+     */
+    public List<Lease> claim(int limit) throws SQLException {
+        List<Lease> leases = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(CLAIM)) {
+            statement.setString(1, instanceId);
+            statement.setInt(2, leaseSeconds);
+            statement.setString(3, target);
+            statement.setInt(4, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ContentItem item = new ContentItem();
+                    item.setId(resultSet.getString("report_id"));
+                    item.setRejectionReason(resultSet.getString("rejection_reason"));
+                    item.setOrderNumber(resultSet.getString("order_number"));
+                    String stage = resultSet.getString("stage");
+                    leases.add(new Lease(item, stage == null ? null : ReportStage.valueOf(stage)));
+                }
+            }
+        }
+        return leases;
+    }
+
+    /**
+     * Запоминает этап обработки, чтобы при потере аренды другой экземпляр продолжил с него.
+     */
+    public void progress(String reportId, ReportStage stage) {
+        update(PROGRESS, statement -> {
+            statement.setString(1, stage.name());
+            statement.setString(2, target);
+            statement.setString(3, reportId);
+            statement.setString(4, instanceId);
+        });
+    }
+
+    /**
+     * Отмечает отчет завершенным и снимает аренду.
+     *
+     * @param reportId ID отчета
+     * @param stage    итоговый этап или null, если отчет не требует обработки
+     */
+    public void complete(String reportId, ReportStage stage) {
+        int rows = update(COMPLETE, statement -> {
+            statement.setString(1, stage == null ? null : stage.name());
+            statement.setString(2, target);
+            statement.setString(3, reportId);
+            statement.setString(4, instanceId);
+        });
+        if (rows == 0) {
+            log.warn("[{}] Аренда отчета истекла до завершения обработки", reportId);
+        }
+    }
+
+    /**
+     * Снимает аренду незавершенного отчета. Отчет снова станет доступен через {@code delay}.
+     */
+    public void release(String reportId, Duration delay) {
+        update(RELEASE, statement -> {
+            statement.setLong(1, delay.toSeconds());
+            statement.setString(2, target);
+            statement.setString(3, reportId);
+            statement.setString(4, instanceId);
+        });
+    }
+
+    /**
+     * Продлевает все аренды экземпляра.
+     */
+    void heartbeat() {
+        int reports = update(HEARTBEAT, this::bindHeartbeat);
+        update(HEARTBEAT_WATERMARK, this::bindHeartbeat);
+        log.debug("Продлены аренды {} отчетов", reports);
+    }
+
+    private void bindHeartbeat(PreparedStatement statement) throws SQLException {
+        statement.setInt(1, leaseSeconds);
+        statement.setString(2, target);
+        statement.setString(3, instanceId);
+    }
+
+    /**
+     * Останавливает продление и отдает все незавершенные отчеты другим экземплярам.
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        int released = update(RELEASE_ALL, statement -> {
+            statement.setString(1, target);
+            statement.setString(2, instanceId);
+        });
+        releaseWatermark(null);
+        log.info("Координация остановлена, возвращено в очередь отчетов: {}", released);
+    }
+
+    private void createTables() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            // Несколько экземпляров могут стартовать одновременно, а CREATE IF NOT EXISTS не защищен от гонки
+            statement.execute("SELECT pg_advisory_xact_lock(hashtext('multon_report_lease'))");
+            statement.execute(CREATE_LEASES);
+            statement.execute(CREATE_PENDING_INDEX);
+            statement.execute(CREATE_WATERMARK);
+            connection.commit();
+        }
+    }
+
+    /**
+     * Выполняет изменение в отдельной транзакции. Ошибки только пишутся в лог:
+     * если изменение не записалось, аренда просто истечет и отчет будет обработан повторно.
+     *
+     * @return количество измененных строк или 0 при ошибке
+     */
+    private int update(String sql, Binder binder) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            binder.bind(statement);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            log.error("Ошибка обновления аренды", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Отчет, взятый в аренду.
+     *
+     * @param item  отчет
+     * @param stage этап, записанный предыдущим владельцем, или null
+     */
+    public record Lease(ContentItem item, ReportStage stage) {
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+}
@@ -0,0 +1,63 @@
+package by.vdavdov.service;
+
+import by.vdavdov.utils.Metrics;
+import by.vdavdov.utils.YamlUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Отдает метрики в формате Prometheus по адресу
+ * {@code http://metrics.host:metrics.port/metrics}.
+ */
+public class MetricsServer {
+    private static final Logger log = LogManager.getLogger(MetricsServer.class);
+
+    private HttpServer server;
+
+    /**
+     * Запускает HTTP-сервер метрик, если он включен в конфиге.
+     * Ошибка запуска логируется и не мешает основной работе.
+     */
+    public void start() {
+        if (!YamlUtil.metricsEnabled) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(YamlUtil.metricsHost, YamlUtil.metricsPort), 0);
+            server.createContext("/metrics", this::handle);
+            server.start();
+            log.info("Метрики доступны на http://{}:{}/metrics", YamlUtil.metricsHost, server.getAddress().getPort());
+        } catch (IOException e) {
+            log.error("Не удалось запустить сервер метрик на порту {}", YamlUtil.metricsPort, e);
+            server = null;
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
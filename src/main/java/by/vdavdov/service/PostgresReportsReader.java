@@ -0,0 +1,108 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ContentItem;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Чтение отклоненных отчетов и их кодов напрямую из PostgreSQL.
+ * <p>
+ * Запросы выполняются в транзакции с forward-only курсором и fetchSize, поэтому драйвер
+ * читает результат с сервера порциями, а не загружает его в память целиком.
+ * Изменения по-прежнему выполняются только через REST.
+ * Тексты запросов задаются в конфиге, так как схема БД зависит от окружения:
+ * запрос отчетов принимает время последнего запуска и возвращает id, rejection_reason
+ * и order_number; запрос кодов принимает ID отчета и возвращает code.
+ */
+public class PostgresReportsReader {
+    private static final Logger log = LogManager.getLogger(PostgresReportsReader.class);
+
+    private final DataSource dataSource;
+    private final String reportsQuery;
+    private final String codesQuery;
+    private final int fetchSize;
+
+    public PostgresReportsReader(DataSource dataSource, String reportsQuery, String codesQuery, int fetchSize) {
+        this.dataSource = dataSource;
+        this.reportsQuery = reportsQuery;
+        this.codesQuery = codesQuery;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Отдает отчеты со статусом REJECTED, измененные начиная с указанного времени.
+     *
+     * @param since    время последнего запуска
+     * @param consumer получатель отчетов
+     * @return количество прочитанных отчетов
+     * @throws SQLException при ошибках запроса
+     */
+    public int forEachRejectedReport(Instant since, Consumer<ContentItem> consumer) throws SQLException {
+        return stream(reportsQuery, statement -> statement.setTimestamp(1, Timestamp.from(since)), resultSet -> {
+            ContentItem item = new ContentItem();
+            item.setId(resultSet.getString("id"));
+            item.setRejectionReason(resultSet.getString("rejection_reason"));
+            item.setOrderNumber(resultSet.getString("order_number"));
+            consumer.accept(item);
+        });
+    }
+
+    /**
+     * Отдает все коды отчета.
+     *
+     * @param reportId ID отчета
+     * @param consumer получатель кодов
+     * @return количество прочитанных кодов
+     * @throws SQLException при ошибках запроса
+     */
+    public int forEachCode(String reportId, Consumer<String> consumer) throws SQLException {
+        return stream(codesQuery, statement -> statement.setString(1, reportId),
+                resultSet -> consumer.accept(resultSet.getString("code")));
+    }
+
+    private int stream(String query, Binder binder, RowHandler handler) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            // Курсор на стороне сервера работает только вне режима autocommit
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                binder.bind(statement);
+
+                int rows = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        handler.handle(resultSet);
+                        rows++;
+                    }
+                }
+                connection.commit();
+                log.debug("Прочитано строк: {}", rows);
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet resultSet) throws SQLException;
+    }
+}
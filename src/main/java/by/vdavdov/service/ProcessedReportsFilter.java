@@ -0,0 +1,164 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ReportStage;
+import by.vdavdov.utils.BloomFilter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отчеты, обработка которых уже завершена, с итогом обработки.
+ * <p>
+ * Отчеты, требующие ручной обработки, и отчеты, затронутые во время запуска,
+ * попадают в следующее окно {@code updated>=lastRun} снова. Фильтр позволяет
+ * пропустить их до любого сетевого запроса. Спереди стоит фильтр Блума, который
+ * для незнакомых отчетов отвечает без обращения к точному хранилищу; точное хранилище -
+ * файл с записями {@code id;итог;время}, который дописывается и сжимается при старте
+ * и в {@link #flush()} в конце каждого запуска.
+ * Записи старше {@code processed.ttlHours} не учитываются, и отчет обрабатывается заново.
+ * До этого повторное отклонение уже обработанного отчета тоже пропускается.
+ */
+public class ProcessedReportsFilter {
+    private static final Logger log = LogManager.getLogger(ProcessedReportsFilter.class);
+
+    private final Path file;
+    private final Duration ttl;
+    private final int expectedReports;
+    private volatile BloomFilter bloomFilter;
+    private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public ProcessedReportsFilter(Path file, Duration ttl, int expectedReports) {
+        this.file = file;
+        this.ttl = ttl;
+        this.expectedReports = expectedReports;
+        this.bloomFilter = new BloomFilter(expectedReports, 0.01);
+        load();
+    }
+
+    /**
+     * @param reportId ID отчета
+     * @return true, если отчет уже обработан и запись еще не устарела
+     */
+    public boolean contains(String reportId) {
+        if (!bloomFilter.mightContain(reportId)) {
+            return false;
+        }
+        Outcome outcome = outcomes.get(reportId);
+        if (outcome == null) {
+            return false;
+        }
+        if (isExpired(outcome)) {
+            outcomes.remove(reportId, outcome);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Запоминает итог обработки отчета.
+     *
+     * @param reportId ID отчета
+     * @param stage    итоговый этап
+     */
+    public void add(String reportId, ReportStage stage) {
+        Outcome outcome = new Outcome(stage, Instant.now());
+
+        writeLock.lock();
+        try {
+            // Под блокировкой, чтобы отчет не потерялся при одновременной пересборке фильтра Блума
+            outcomes.put(reportId, outcome);
+            bloomFilter.add(reportId);
+            Files.writeString(file, format(reportId, outcome), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Не удалось сохранить итог обработки отчета {}", reportId, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет устаревшие записи и переписывает файл по одной записи на отчет.
+     * Фильтр Блума строится заново по оставшимся отчетам, поэтому у долго работающего
+     * планировщика не растут ни файл, ни память, ни доля ложных срабатываний фильтра.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            outcomes.values().removeIf(this::isExpired);
+            rewrite();
+        } catch (IOException e) {
+            log.error("Не удалось переписать список обработанных отчетов {}", file, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void load() {
+        try {
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    String[] parts = line.split(";");
+                    if (parts.length != 3) {
+                        continue;
+                    }
+                    Outcome outcome = new Outcome(ReportStage.valueOf(parts[1]),
+                            Instant.ofEpochMilli(Long.parseLong(parts[2])));
+                    if (!isExpired(outcome)) {
+                        outcomes.put(parts[0], outcome);
+                    }
+                }
+            }
+
+            rewrite();
+            log.info("Загружено обработанных отчетов: {}", outcomes.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка чтения списка обработанных отчетов {}", file, e);
+        }
+    }
+
+    /**
+     * Переписывает файл без устаревших и повторных записей и пересобирает фильтр Блума.
+     * Вызывается при загрузке или под writeLock.
+     */
+    private void rewrite() throws IOException {
+        BloomFilter rebuilt = new BloomFilter(expectedReports, 0.01);
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "processed", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Outcome> entry : outcomes.entrySet()) {
+                writer.write(format(entry.getKey(), entry.getValue()));
+                rebuilt.add(entry.getKey());
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        bloomFilter = rebuilt;
+    }
+
+    private boolean isExpired(Outcome outcome) {
+        return outcome.finished().plus(ttl).isBefore(Instant.now());
+    }
+
+    private static String format(String reportId, Outcome outcome) {
+        return reportId + ";" + outcome.stage() + ";" + outcome.finished().toEpochMilli() + "\n";
+    }
+
+    private record Outcome(ReportStage stage, Instant finished) {
+    }
+}
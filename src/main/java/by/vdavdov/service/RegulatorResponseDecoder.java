@@ -0,0 +1,163 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.CisEntry;
+import by.vdavdov.utils.JsonCodec;
+import by.vdavdov.utils.LogPayload;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор ответа регулятора из regulator-ru-adapter.
+ * Ответ вложен трижды: JSON адаптера -> сохраненное HTTP-сообщение -> JSON с полем content,
+ * в котором строкой лежит JSON с cisList. Каждый уровень читается потоковым парсером
+ * прямо из буфера символов предыдущего уровня, без split и промежуточных строк.
+ */
+public class RegulatorResponseDecoder {
+    private static final Logger log = LogManager.getLogger(RegulatorResponseDecoder.class);
+    private static final JsonFactory jsonFactory = JsonCodec.factory();
+
+    /**
+     * Разбирает ответ адаптера в список записей cisList.
+     * Ответ без cisList или с cisList не в виде массива означает, что регулятор
+     * не вернул кодов с ошибками, и разбирается в пустой список.
+     *
+     * @param rawResponse тело ответа адаптера
+     * @return записи cisList или null, если ответ разобрать не удалось
+     */
+    public List<CisEntry> decode(String rawResponse) {
+        List<CisEntry> entries = new ArrayList<>();
+        boolean decoded = decodeInner(rawResponse, (inner, text) -> {
+            if (moveToField(inner, "cisList") && inner.currentToken() == JsonToken.START_ARRAY) {
+                readCisList(inner, entries);
+            }
+        });
+        return decoded ? entries : null;
+    }
+
+    /**
+     * Извлекает вложенный JSON с cisList в виде строки.
+     *
+     * @param rawResponse тело ответа адаптера
+     * @return вложенный JSON или пустая строка, если ответ разобрать не удалось
+     */
+    public String decodeInnerJson(String rawResponse) {
+        StringBuilder result = new StringBuilder();
+        boolean decoded = decodeInner(rawResponse, (inner, text) -> {
+            // Проверяем, что вложенный JSON целиком корректен
+            inner.nextToken();
+            inner.skipChildren();
+            result.append(text);
+        });
+        return decoded ? result.toString() : "";
+    }
+
+    private boolean decodeInner(String rawResponse, InnerReader reader) {
+        try (JsonParser outer = jsonFactory.createParser(rawResponse)) {
+            if (!moveToField(outer, "content") || outer.currentToken() != JsonToken.VALUE_STRING) {
+                log.error("В ответе адаптера нет поля content: {}", LogPayload.of(rawResponse));
+                return false;
+            }
+
+            char[] message = outer.getTextCharacters();
+            int messageStart = outer.getTextOffset();
+            int messageEnd = messageStart + outer.getTextLength();
+            log.debug("Размер сохраненного ответа регулятора: {} символов", messageEnd - messageStart);
+
+            int bodyStart = findBodyStart(message, messageStart, messageEnd);
+            if (bodyStart < 0) {
+                log.error("Не удалось разделить заголовки и тело. Размер ответа: {}", messageEnd - messageStart);
+                return false;
+            }
+
+            try (JsonParser body = jsonFactory.createParser(message, bodyStart, messageEnd - bodyStart)) {
+                if (!moveToField(body, "content") || body.currentToken() != JsonToken.VALUE_STRING) {
+                    log.error("Некорректный формат поля content");
+                    return false;
+                }
+
+                char[] content = body.getTextCharacters();
+                int contentStart = body.getTextOffset();
+                int contentLength = body.getTextLength();
+                try (JsonParser inner = jsonFactory.createParser(content, contentStart, contentLength)) {
+                    reader.read(inner, CharBuffer.wrap(content, contentStart, contentLength));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Ошибка парсинга вложенного JSON", e);
+            return false;
+        }
+    }
+
+    /**
+     * Ищет начало тела HTTP-сообщения - позицию после первой пустой строки.
+     *
+     * @return индекс начала тела или -1, если пустой строки нет
+     */
+    static int findBodyStart(char[] message, int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            if (message[i] != '\n') {
+                continue;
+            }
+            if (message[i + 1] == '\n') {
+                return i + 2;
+            }
+            if (message[i + 1] == '\r' && i + 2 < to && message[i + 2] == '\n') {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Переводит парсер на значение поля верхнего уровня объекта.
+     *
+     * @return true, если поле найдено; текущий токен парсера - значение поля
+     */
+    private static boolean moveToField(JsonParser parser, String name) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static void readCisList(JsonParser parser, List<CisEntry> entries) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String cis = null;
+            String description = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("cis".equals(field) && value == JsonToken.VALUE_STRING) {
+                    cis = parser.getText();
+                } else if ("description".equals(field) && value == JsonToken.VALUE_STRING) {
+                    description = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            entries.add(new CisEntry(cis, description));
+        }
+    }
+
+    @FunctionalInterface
+    private interface InnerReader {
+        void read(JsonParser inner, CharSequence text) throws IOException;
+    }
+}
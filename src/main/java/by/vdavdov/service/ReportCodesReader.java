@@ -0,0 +1,132 @@
+package by.vdavdov.service;
+
+import by.vdavdov.utils.JsonCodec;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.function.Consumer;
+
+/**
+ * Потоковое чтение кодов отчета.
+ * Проходит все страницы /codes и отдает коды по одному, не строя дерево JSON
+ * и не собирая промежуточный список, поэтому память не зависит от размера страницы.
+ */
+public class ReportCodesReader {
+    private static final int PAGE_SIZE = 1000;
+    private static final JsonFactory jsonFactory = JsonCodec.factory();
+
+    private final AuthService authService;
+    private final String host;
+
+    public ReportCodesReader(AuthService authService, String host) {
+        this.authService = authService;
+        this.host = host;
+    }
+
+    /**
+     * Отдает все коды отчета со всех страниц.
+     *
+     * @param reportId ID отчета
+     * @param consumer получатель кодов
+     * @return количество прочитанных кодов
+     * @throws Exception при ошибках HTTP-запроса или парсинга ответа
+     */
+    public int forEachCode(String reportId, Consumer<String> consumer) throws Exception {
+        int total = 0;
+        int page = 0;
+        boolean hasMorePages = true;
+
+        while (hasMorePages) {
+            HttpResponse<InputStream> response = authService.sendAuthorized(
+                    HttpRequest.newBuilder()
+                            .uri(new URI(host + "/code-usage-processor/api/v2/code-usage-reports/"
+                                    + reportId + "/codes?page=" + page + "&size=" + PAGE_SIZE))
+                            .GET(),
+                    HttpCompression.ofInputStream()
+            );
+
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new RuntimeException("HTTP error: " + response.statusCode());
+                }
+                CodesPage codesPage = readPage(body, consumer);
+                total += codesPage.count();
+                hasMorePages = codesPage.count() > 0 && !codesPage.isLast(page);
+            }
+            page++;
+        }
+        return total;
+    }
+
+    /**
+     * Разбирает одну страницу кодов, отдавая значения поля code из массива content.
+     *
+     * @param body     тело ответа
+     * @param consumer получатель кодов
+     * @return сведения о странице
+     * @throws IOException при ошибках парсинга
+     */
+    static CodesPage readPage(InputStream body, Consumer<String> consumer) throws IOException {
+        int count = 0;
+        Boolean last = null;
+        int totalPages = -1;
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Ожидался JSON-объект со страницей кодов");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "content" -> {
+                        if (value == JsonToken.START_ARRAY) {
+                            count = readContent(parser, consumer);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    case "last" -> last = value == JsonToken.VALUE_TRUE;
+                    case "totalPages" -> totalPages = parser.getValueAsInt(-1);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new CodesPage(count, last, totalPages);
+    }
+
+    private static int readContent(JsonParser parser, Consumer<String> consumer) throws IOException {
+        int count = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("code".equals(field) && value == JsonToken.VALUE_STRING) {
+                    consumer.accept(parser.getText());
+                    count++;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return count;
+    }
+
+    record CodesPage(int count, Boolean last, int totalPages) {
+        boolean isLast(int page) {
+            if (last != null) {
+                return last;
+            }
+            if (totalPages >= 0) {
+                return page + 1 >= totalPages;
+            }
+            return count < PAGE_SIZE;
+        }
+    }
+}
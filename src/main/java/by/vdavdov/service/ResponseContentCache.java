@@ -0,0 +1,245 @@
+package by.vdavdov.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Дисковый кеш ответов регулятора по responsePath.
+ * Ответ по одному и тому же пути не меняется, поэтому повторная обработка отчета
+ * не должна заново скачивать его из regulator-ru-adapter.
+ * <p>
+ * Каждый ответ хранится в отдельном сжатом файле, имя которого - SHA-256 от пути.
+ * Файл содержит время записи и CRC32 содержимого; просроченные по TTL и поврежденные
+ * записи удаляются при чтении. Время последнего доступа хранится в mtime файла,
+ * по нему при превышении лимита размера вытесняются самые давно читанные записи.
+ */
+public class ResponseContentCache {
+    private static final Logger log = LogManager.getLogger(ResponseContentCache.class);
+    private static final int MAGIC = 0x4D524331; // MRC1
+    private static final String SUFFIX = ".gz";
+
+    private final Path directory;
+    private final long maxSizeBytes;
+    private final Duration ttl;
+    private final AtomicLong sizeBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Замена и удаление файла вместе с учетом его размера, иначе параллельные put одного ключа
+    // оба считают файл новым и размер кеша растет дважды
+    private final ReentrantLock sizeLock = new ReentrantLock();
+    private final boolean enabled;
+
+    public ResponseContentCache(Path directory, long maxSizeBytes, Duration ttl, boolean enabled) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.ttl = ttl;
+        this.enabled = enabled && initDirectory();
+    }
+
+    /**
+     * Отдает закешированный ответ.
+     *
+     * @param responsePath путь к ответу регулятора
+     * @return содержимое или пустой Optional, если записи нет, она просрочена или повреждена
+     */
+    public Optional<String> get(String responsePath) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Path file = fileFor(responsePath);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неизвестный формат файла");
+            }
+            Instant created = Instant.ofEpochMilli(in.readLong());
+            long checksum = in.readLong();
+
+            if (!created.plus(ttl).isBefore(Instant.now())) {
+                byte[] content;
+                try (InputStream gzip = new GZIPInputStream(in)) {
+                    content = gzip.readAllBytes();
+                }
+                if (crc32(content) != checksum) {
+                    throw new IOException("Не совпала контрольная сумма");
+                }
+
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+                log.debug("Ответ регулятора {} взят из кеша", responsePath);
+                return Optional.of(new String(content, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            log.warn("Поврежденная запись кеша для {}, удаляем", responsePath, e);
+            remove(file);
+            return Optional.empty();
+        }
+
+        // Просроченная запись удаляется после закрытия файла
+        log.debug("Запись кеша для {} просрочена", responsePath);
+        remove(file);
+        return Optional.empty();
+    }
+
+    /**
+     * Сохраняет ответ в кеш. Ошибки записи логируются и не прерывают обработку.
+     *
+     * @param responsePath путь к ответу регулятора
+     * @param content      содержимое ответа
+     */
+    public void put(String responsePath, String content) {
+        if (!enabled) {
+            return;
+        }
+        Path file = fileFor(responsePath);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        try {
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeInt(MAGIC);
+                out.writeLong(System.currentTimeMillis());
+                out.writeLong(crc32(bytes));
+                try (OutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(bytes);
+                }
+            }
+            long newSize = Files.size(temp);
+            long totalSize;
+            sizeLock.lock();
+            try {
+                long previousSize = Files.exists(file) ? Files.size(file) : 0;
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                totalSize = sizeBytes.addAndGet(newSize - previousSize);
+            } finally {
+                sizeLock.unlock();
+            }
+            if (totalSize > maxSizeBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить ответ {} в кеш", responsePath, e);
+        }
+    }
+
+    /**
+     * Удаляет давно не читанные записи, пока размер кеша не опустится до 90% лимита.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> entries = new ArrayList<>(files.filter(f -> f.toString().endsWith(SUFFIX)).toList());
+            entries.sort(Comparator.comparing(ResponseContentCache::lastModified));
+
+            long target = maxSizeBytes * 9 / 10;
+            for (Path entry : entries) {
+                if (sizeBytes.get() <= target) {
+                    break;
+                }
+                remove(entry);
+            }
+            log.debug("Кеш ответов регулятора очищен до {} байт", sizeBytes.get());
+        } catch (IOException e) {
+            log.warn("Ошибка очистки кеша ответов регулятора", e);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean initDirectory() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(f -> {
+                    if (f.toString().endsWith(SUFFIX)) {
+                        sizeBytes.addAndGet(f.toFile().length());
+                    } else if (f.toString().endsWith(".tmp")) {
+                        f.toFile().delete();
+                    }
+                });
+            }
+            log.info("Кеш ответов регулятора: {}, занято {} байт", directory.toAbsolutePath(), sizeBytes.get());
+            return true;
+        } catch (IOException e) {
+            log.error("Не удалось открыть каталог кеша {}, кеш отключен", directory, e);
+            return false;
+        }
+    }
+
+    private void remove(Path file) {
+        sizeLock.lock();
+        try {
+            if (!Files.exists(file)) {
+                return;
+            }
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                sizeBytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить запись кеша {}", file, e);
+        } finally {
+            sizeLock.unlock();
+        }
+    }
+
+    /**
+     * @return учтенный размер записей кеша в байтах
+     */
+    long sizeBytes() {
+        return sizeBytes.get();
+    }
+
+    private Path fileFor(String responsePath) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(responsePath.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
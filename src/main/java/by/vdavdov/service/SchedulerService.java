@@ -1,28 +1,119 @@
 package by.vdavdov.service;
 
+import by.vdavdov.model.Target;
 import by.vdavdov.utils.YamlUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 public class SchedulerService {
     private static final Logger log = LogManager.getLogger(SchedulerService.class);
-    private final CheckReportsService checkReportsService = new CheckReportsService();
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Lower bound of the idle delay, so a zero or missing interval cannot make a target poll in a hot loop
+    private static final long MIN_IDLE_DELAY_MILLIS = 1000;
+    private final List<CheckReportsService> services = new ArrayList<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Semaphore runPermits;
+    private final MetricsServer metricsServer = new MetricsServer();
+
+    public SchedulerService() {
+        for (Target target : YamlUtil.targets) {
+            services.add(new CheckReportsService(target));
+        }
+        scheduler = new ScheduledThreadPoolExecutor(services.size());
+        // A pending adaptive run must not delay shutdown
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        int parallel = YamlUtil.scheduleMaxParallelTargets > 0
+                ? Math.min(YamlUtil.scheduleMaxParallelTargets, services.size())
+                : services.size();
+        // Fair, so a target waiting for a permit is not overtaken by one that has just finished
+        runPermits = new Semaphore(parallel, true);
+    }
 
     public void startScheduling() {
         int interval = YamlUtil.scheduleInterval;
-        log.info("Starting scheduler with interval {} minutes", interval);
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                log.info("Starting reports check task...");
-                checkReportsService.getRejectedReports();
-            } catch (Exception e) {
-                log.error("Error during reports check task", e);
+        metricsServer.start();
+        log.info("Targets: {}, runs in parallel: {}", YamlUtil.targets, runPermits.availablePermits());
+        if (YamlUtil.scheduleAdaptive) {
+            if (interval <= 0) {
+                log.warn("schedule.interval is not set, idle delay is capped at {} ms",
+                        Math.max(MIN_IDLE_DELAY_MILLIS, TimeUnit.SECONDS.toMillis(YamlUtil.scheduleMinDelaySeconds)));
+            }
+            log.info("Starting adaptive scheduler: idle delay {}s..{} minutes", YamlUtil.scheduleMinDelaySeconds, interval);
+            for (CheckReportsService service : services) {
+                scheduler.execute(() -> runAdaptive(service, 0));
             }
-        }, 0, interval, TimeUnit.MINUTES);
+            return;
+        }
+        log.info("Starting scheduler with interval {} minutes", interval);
+        for (CheckReportsService service : services) {
+            scheduler.scheduleAtFixedRate(() -> runOnce(service), 0, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Runs one reports check for a target while holding a run permit.
+     *
+     * @return number of reports completed by the run
+     */
+    private int runOnce(CheckReportsService service) {
+        try {
+            runPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        try {
+            log.info("Starting reports check task for {}...", service.getTarget());
+            return service.getRejectedReports();
+        } catch (Exception e) {
+            log.error("Error during reports check task for {}", service.getTarget(), e);
+            return 0;
+        } finally {
+            runPermits.release();
+        }
+    }
+
+    /**
+     * One run of the adaptive mode for a target. The next run is scheduled only after
+     * this one finishes, so runs of a target never overlap: right away if the run
+     * completed any reports, otherwise after an idle delay that doubles up to the
+     * configured interval.
+     */
+    private void runAdaptive(CheckReportsService service, long previousDelay) {
+        int completed = runOnce(service);
+
+        long delay = nextDelayMillis(completed, previousDelay,
+                TimeUnit.SECONDS.toMillis(YamlUtil.scheduleMinDelaySeconds),
+                TimeUnit.MINUTES.toMillis(YamlUtil.scheduleInterval));
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        log.info("Next reports check for {} in {} ms", service.getTarget(), delay);
+        try {
+            scheduler.schedule(() -> runAdaptive(service, delay), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Scheduler is stopping, next check skipped");
+        }
+    }
+
+    /**
+     * @return 0 if the last run completed reports, otherwise the previous delay doubled,
+     * starting from {@code minDelay} and capped at {@code maxDelay}; an idle delay is never
+     * shorter than one second, even if both bounds are zero
+     */
+    static long nextDelayMillis(int completed, long previousDelay, long minDelay, long maxDelay) {
+        if (completed > 0) {
+            return 0;
+        }
+        long floor = Math.max(MIN_IDLE_DELAY_MILLIS, minDelay);
+        long delay = previousDelay <= 0 ? floor : previousDelay * 2;
+        return Math.min(Math.max(delay, floor), Math.max(floor, maxDelay));
     }
 
     public void stopScheduling() {
@@ -34,6 +125,8 @@ public class SchedulerService {
         } catch (InterruptedException e) {
             scheduler.shutdownNow();
         }
+        services.forEach(CheckReportsService::close);
+        metricsServer.stop();
         log.info("Scheduler stopped");
     }
 }
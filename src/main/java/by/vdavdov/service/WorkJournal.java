@@ -0,0 +1,276 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ContentItem;
+import by.vdavdov.model.ReportStage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал работ по отчетам: append-only файл, отображенный в память.
+ * <p>
+ * Каждая запись фиксирует, до какого этапа дошла обработка отчета, поэтому после
+ * падения или ошибки обработка продолжается с последнего завершенного этапа,
+ * а уже завершенные отчеты не обрабатываются повторно.
+ * Запись: длина, CRC32 и данные; чтение останавливается на первой пустой или
+ * поврежденной записи. При открытии и в {@link #flush()} журнал переписывается: остается
+ * по одной записи на отчет, записи старше {@code journal.retentionHours} отбрасываются.
+ * Данные попадают в page cache сразу и переживают падение JVM; на диск
+ * они сбрасываются при расширении файла и при {@link #flush()}.
+ */
+public final class WorkJournal implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(WorkJournal.class);
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final int HEADER_SIZE = 8;
+    private static final int COMPACTION_MIN_BYTES = INITIAL_CAPACITY / 4;
+
+    private final Path file;
+    private final Duration retention;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long compactedSize;
+
+    public WorkJournal(Path file, Duration retention) {
+        this.file = file;
+        this.retention = retention;
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал работ " + file, e);
+        }
+    }
+
+    /**
+     * @param reportId ID отчета
+     * @return последний записанный этап или null, если отчета нет в журнале
+     */
+    public ReportStage stageOf(String reportId) {
+        Entry entry = entries.get(reportId);
+        return entry != null ? entry.stage() : null;
+    }
+
+    /**
+     * Фиксирует завершение этапа обработки отчета.
+     *
+     * @param item  отчет
+     * @param stage завершенный этап
+     */
+    public void advance(ContentItem item, ReportStage stage) {
+        Entry entry = new Entry(item, stage, Instant.now());
+        byte[] record = encode(entry);
+
+        writeLock.lock();
+        try {
+            ensureCapacity(record.length);
+            buffer.put(record);
+            entries.put(item.getId(), entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка записи в журнал работ", e);
+        } finally {
+            writeLock.unlock();
+        }
+        log.debug("[{}] Этап {} записан в журнал", item.getId(), stage);
+    }
+
+    /**
+     * @return отчеты, обработка которых начата, но не завершена
+     */
+    public List<ContentItem> unfinished() {
+        return entries.values().stream()
+                .filter(entry -> !entry.stage().isTerminal())
+                .map(Entry::item)
+                .toList();
+    }
+
+    /**
+     * Сбрасывает записанные данные на диск и удаляет записи старше {@code journal.retentionHours}.
+     * Если записи удалены или файл вырос вдвое с последнего сжатия, журнал переписывается,
+     * поэтому у долго работающего планировщика он не растет бесконечно.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            buffer.force();
+            if (expire() || buffer.position() > Math.max(2 * compactedSize, COMPACTION_MIN_BYTES)) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сжать журнал работ " + file, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return объем записанных в журнал данных в байтах
+     */
+    long size() {
+        writeLock.lock();
+        try {
+            return buffer.position();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        if (Files.exists(file)) {
+            replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+        }
+        expire();
+        rewrite();
+
+        log.info("Журнал работ {}: {} отчетов, из них не завершено {}",
+                file.toAbsolutePath(), entries.size(), unfinished().size());
+    }
+
+    /**
+     * @return true, если удалена хотя бы одна запись старше {@code journal.retentionHours}
+     */
+    private boolean expire() {
+        Instant threshold = Instant.now().minus(retention);
+        return entries.values().removeIf(entry -> entry.updated().isBefore(threshold));
+    }
+
+    /**
+     * Переписывает журнал по одной записи на отчет и отображает новый файл в память.
+     * Вызывается при открытии или под writeLock.
+     */
+    private void rewrite() throws IOException {
+        ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+        for (Entry entry : entries.values()) {
+            compacted.write(encode(entry));
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "journal", ".tmp");
+        Files.write(temp, compacted.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        FileChannel previous = channel;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, compacted.size() * 2L));
+        buffer.position(compacted.size());
+        compactedSize = compacted.size();
+        if (previous != null) {
+            previous.close();
+        }
+        log.debug("Журнал работ переписан: {} отчетов, {} байт", entries.size(), compactedSize);
+    }
+
+    private void replay(ByteBuffer data) {
+        while (data.remaining() >= HEADER_SIZE) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            data.get(payload);
+            if (crc32(payload) != checksum) {
+                log.warn("Поврежденная запись журнала работ, чтение остановлено");
+                break;
+            }
+            Entry entry = decode(ByteBuffer.wrap(payload));
+            entries.put(entry.item().getId(), entry);
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int position = buffer.position();
+        buffer.force();
+        long capacity = Math.max((long) buffer.capacity() * 2, position + (long) length);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.position(position);
+    }
+
+    private static byte[] encode(Entry entry) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(entry.stage().ordinal());
+            out.writeLong(entry.updated().toEpochMilli());
+            writeString(out, entry.item().getId());
+            writeString(out, entry.item().getRejectionReason());
+            writeString(out, entry.item().getOrderNumber());
+            byte[] bytes = payload.toByteArray();
+
+            return ByteBuffer.allocate(HEADER_SIZE + bytes.length)
+                    .putInt(bytes.length)
+                    .putInt(crc32(bytes))
+                    .put(bytes)
+                    .array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Entry decode(ByteBuffer payload) {
+        ReportStage stage = ReportStage.values()[payload.get()];
+        Instant updated = Instant.ofEpochMilli(payload.getLong());
+        ContentItem item = new ContentItem();
+        item.setId(readString(payload));
+        item.setRejectionReason(readString(payload));
+        item.setOrderNumber(readString(payload));
+        return new Entry(item, stage, updated);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private record Entry(ContentItem item, ReportStage stage, Instant updated) {
+    }
+}
@@ -0,0 +1,126 @@
+package by.vdavdov.utils;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Адаптивный лимит одновременных запросов (AIMD).
+ * <p>
+ * Пока задержка стабильна, лимит растет примерно на единицу за "окно" из limit ответов.
+ * При перегрузке (429, 503, таймаут) лимит уменьшается вдвое, при росте задержки
+ * выше {@code tolerance} от базовой - на 10%. Базовая задержка - медленная
+ * скользящая средняя, текущая - быстрая.
+ * <p>
+ * Лимит снижается не чаще одного раза за окно: ответы на запросы, отправленные
+ * до последнего снижения, его уже не меняют. Иначе пачка 429 от одного окна
+ * сразу опускала бы лимит до минимума.
+ */
+public class AdaptiveLimiter {
+    private static final double FAST_ALPHA = 0.3;
+    private static final double SLOW_ALPHA = 0.02;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private long issued;
+    private long decreaseMark;
+    private double baselineNanos;
+    private double recentNanos;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Ждет, пока число запросов в работе не станет меньше лимита, и занимает место.
+     *
+     * @return номер запроса, который передается в {@link #release(long, long, boolean)}
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public long acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            inFlight++;
+            return ++issued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место и корректирует лимит по результату запроса.
+     *
+     * @param ticket       номер запроса из {@link #acquire()}
+     * @param latencyNanos время выполнения запроса
+     * @param overloaded   признак перегрузки сервера
+     */
+    public void release(long ticket, long latencyNanos, boolean overloaded) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded) {
+                decrease(ticket, 0.5);
+            } else if (latencyNanos > 0) {
+                if (baselineNanos == 0) {
+                    baselineNanos = latencyNanos;
+                    recentNanos = latencyNanos;
+                }
+                baselineNanos += SLOW_ALPHA * (latencyNanos - baselineNanos);
+                recentNanos += FAST_ALPHA * (latencyNanos - recentNanos);
+
+                if (recentNanos > baselineNanos * tolerance) {
+                    decrease(ticket, 0.9);
+                } else if (inFlight + 1 >= (int) limit) {
+                    // Растем, только если лимит действительно был занят
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место без корректировки лимита, например при сетевой ошибке.
+     *
+     * @param ticket номер запроса из {@link #acquire()}
+     */
+    public void release(long ticket) {
+        release(ticket, 0, false);
+    }
+
+    /**
+     * Уменьшает лимит, если запрос отправлен после предыдущего снижения.
+     */
+    private void decrease(long ticket, double factor) {
+        if (ticket <= decreaseMark) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * factor);
+        decreaseMark = issued;
+    }
+
+    /**
+     * @return текущий лимит одновременных запросов
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
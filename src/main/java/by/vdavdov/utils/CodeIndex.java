@@ -0,0 +1,223 @@
+package by.vdavdov.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс кодов маркировки по ключу - части кода до первого разделителя GS (0x1D).
+ * <p>
+ * Коды хранятся упакованными ASCII-байтами в одном массиве, поиск идет по таблице
+ * с открытой адресацией, поэтому поиск не создает строк и массивов. Коды с не-ASCII
+ * символами (на практике не встречаются) хранятся в обычной HashMap.
+ * При совпадении ключей остается первый добавленный код.
+ * После построения индекс неизменяем и безопасен для чтения из нескольких потоков.
+ */
+public class CodeIndex {
+    private static final char GS = '\u001d';
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] keyLengths;
+    private final int[] table;
+    private final int mask;
+    private final int count;
+    private final int unique;
+    private final List<String> fallbackCodes;
+    private final Map<String, Integer> fallbackKeys;
+
+    private CodeIndex(Builder builder) {
+        this.data = builder.data;
+        this.offsets = builder.offsets;
+        this.lengths = builder.lengths;
+        this.keyLengths = builder.keyLengths;
+        this.count = builder.count;
+        this.fallbackCodes = builder.fallbackCodes;
+        this.fallbackKeys = builder.fallbackKeys;
+
+        int capacity = Integer.highestOneBit(Math.max(1, count)) << 2;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+
+        int inserted = 0;
+        for (int i = 0; i < count; i++) {
+            if (insert(i)) {
+                inserted++;
+            }
+        }
+        this.unique = inserted + fallbackCodes.size();
+    }
+
+    /**
+     * Ищет код с тем же ключом, что и у переданного.
+     *
+     * @param cis код из ответа регулятора
+     * @return номер найденного кода или -1
+     */
+    public int find(String cis) {
+        int keyLength = 0;
+        int hash = 0x811c9dc5;
+        for (int length = cis.length(); keyLength < length; keyLength++) {
+            char c = cis.charAt(keyLength);
+            if (c == GS) {
+                break;
+            }
+            if (c > 0x7f) {
+                return findFallback(cis);
+            }
+            hash = (hash ^ c) * 0x01000193;
+        }
+
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (keyLengths[index] == keyLength && keyEquals(index, cis, keyLength)) {
+                return index;
+            }
+        }
+        return findFallback(cis);
+    }
+
+    /**
+     * Отдает код по номеру.
+     *
+     * @param index номер кода, полученный из {@link #find(String)}
+     * @return код целиком
+     */
+    public String code(int index) {
+        if (index >= count) {
+            return fallbackCodes.get(index - count);
+        }
+        return new String(data, offsets[index], lengths[index], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return количество кодов с различными ключами
+     */
+    public int size() {
+        return unique;
+    }
+
+    public boolean isEmpty() {
+        return unique == 0;
+    }
+
+    private boolean keyEquals(int index, String cis, int keyLength) {
+        int offset = offsets[index];
+        for (int i = 0; i < keyLength; i++) {
+            if (data[offset + i] != cis.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean insert(int index) {
+        int offset = offsets[index];
+        int keyLength = keyLengths[index];
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < keyLength; i++) {
+            hash = (hash ^ data[offset + i]) * 0x01000193;
+        }
+
+        int slot = mix(hash) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int other = table[slot] - 1;
+            if (keyLengths[other] == keyLength
+                    && Arrays.equals(data, offsets[other], offsets[other] + keyLength, data, offset, offset + keyLength)) {
+                return false;
+            }
+        }
+        table[slot] = index + 1;
+        return true;
+    }
+
+    private int findFallback(String cis) {
+        if (fallbackKeys.isEmpty()) {
+            return -1;
+        }
+        Integer index = fallbackKeys.get(keyOf(cis));
+        return index != null ? count + index : -1;
+    }
+
+    private static String keyOf(String code) {
+        int end = code.indexOf(GS);
+        return end < 0 ? code : code.substring(0, end);
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Построитель индекса. Не потокобезопасен.
+     */
+    public static class Builder {
+        private byte[] data = new byte[4096];
+        private int used;
+        private int[] offsets = new int[64];
+        private int[] lengths = new int[64];
+        private int[] keyLengths = new int[64];
+        private int count;
+        private final List<String> fallbackCodes = new ArrayList<>();
+        private final Map<String, Integer> fallbackKeys = new HashMap<>();
+
+        /**
+         * Добавляет код в индекс.
+         *
+         * @param code код маркировки
+         */
+        public void add(String code) {
+            int length = code.length();
+            if (!isAscii(code)) {
+                if (fallbackKeys.putIfAbsent(keyOf(code), fallbackCodes.size()) == null) {
+                    fallbackCodes.add(code);
+                }
+                return;
+            }
+
+            if (count == offsets.length) {
+                int capacity = count * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                keyLengths = Arrays.copyOf(keyLengths, capacity);
+            }
+            if (used + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, used + length));
+            }
+
+            int keyLength = length;
+            for (int i = 0; i < length; i++) {
+                char c = code.charAt(i);
+                if (c == GS && keyLength == length) {
+                    keyLength = i;
+                }
+                data[used + i] = (byte) c;
+            }
+
+            offsets[count] = used;
+            lengths[count] = length;
+            keyLengths[count] = keyLength;
+            used += length;
+            count++;
+        }
+
+        public CodeIndex build() {
+            data = Arrays.copyOf(data, used);
+            return new CodeIndex(this);
+        }
+
+        private static boolean isAscii(String code) {
+            for (int i = 0, length = code.length(); i < length; i++) {
+                if (code.charAt(i) > 0x7f) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
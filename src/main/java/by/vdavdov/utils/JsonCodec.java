@@ -0,0 +1,79 @@
+package by.vdavdov.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Общий JSON-кодек приложения.
+ * <p>
+ * Один JsonMapper на все сервисы: описания типов, сериализаторы и таблицы имен полей
+ * строятся один раз. Модуль Blackbird заменяет рефлексивный доступ к сеттерам,
+ * геттерам и конструкторам DTO на сгенерированные лямбды. ObjectReader и ObjectWriter
+ * неизменяемы и потокобезопасны, поэтому кешируются по типу и хранятся вызывающими
+ * классами в статических полях.
+ */
+public final class JsonCodec {
+    private static final JsonMapper mapper = JsonMapper.builder()
+            .addModule(new BlackbirdModule())
+            .build();
+    private static final ObjectReader treeReader = mapper.reader();
+    private static final ConcurrentMap<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<JavaType, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private JsonCodec() {
+    }
+
+    /**
+     * @return читатель объекта указанного типа
+     */
+    public static ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(mapper.constructType(type), mapper::readerFor);
+    }
+
+    /**
+     * @return читатель JSON-массива объектов указанного типа в List
+     */
+    public static ObjectReader listReader(Class<?> elementType) {
+        return readers.computeIfAbsent(listType(elementType), mapper::readerFor);
+    }
+
+    /**
+     * @return читатель произвольного JSON в дерево JsonNode
+     */
+    public static ObjectReader treeReader() {
+        return treeReader;
+    }
+
+    /**
+     * @return писатель объекта указанного типа
+     */
+    public static ObjectWriter writer(Class<?> type) {
+        return writers.computeIfAbsent(mapper.constructType(type), mapper::writerFor);
+    }
+
+    /**
+     * @return писатель списка объектов указанного типа в JSON-массив
+     */
+    public static ObjectWriter listWriter(Class<?> elementType) {
+        return writers.computeIfAbsent(listType(elementType), mapper::writerFor);
+    }
+
+    /**
+     * @return фабрика потоковых парсеров общего маппера
+     */
+    public static JsonFactory factory() {
+        return mapper.getFactory();
+    }
+
+    private static JavaType listType(Class<?> elementType) {
+        return mapper.getTypeFactory().constructCollectionType(List.class, elementType);
+    }
+}
@@ -0,0 +1,59 @@
+package by.vdavdov.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Тело запроса или ответа для логирования.
+ * Строка формируется только при записи в лог: тело обрезается до
+ * {@code logging.payloadBytes} байт UTF-8, а при {@code logging.payloadSampleRate} меньше 1
+ * записывается только у части сообщений, у остальных - только размер.
+ * <pre>
+ * log.debug("Тело ответа: {}", LogPayload.of(response.body()));
+ * </pre>
+ */
+public final class LogPayload {
+    private final String payload;
+
+    private LogPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public static LogPayload of(String payload) {
+        return new LogPayload(payload);
+    }
+
+    /**
+     * Обрезает тело до бюджета без выборки, например для текста исключения.
+     *
+     * @param payload тело запроса или ответа
+     * @return тело не длиннее {@code logging.payloadBytes} байт с пометкой об обрезке
+     */
+    public static String truncate(String payload) {
+        if (payload == null) {
+            return "null";
+        }
+        int budget = Math.max(0, YamlUtil.loggingPayloadBytes);
+        int bytes = 0;
+        for (int i = 0, length = payload.length(); i < length; i++) {
+            char c = payload.charAt(i);
+            int size = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : Character.isLowSurrogate(c) ? 0 : 3;
+            if (bytes + size > budget) {
+                return payload.substring(0, i) + "...(+" + (length - i) + " символов)";
+            }
+            bytes += size;
+        }
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        if (payload == null) {
+            return "null";
+        }
+        double sampleRate = YamlUtil.loggingPayloadSampleRate;
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return "<" + payload.length() + " символов, не записано>";
+        }
+        return truncate(payload);
+    }
+}
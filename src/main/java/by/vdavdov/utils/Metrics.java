@@ -0,0 +1,125 @@
+package by.vdavdov.utils;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Реестр метрик приложения: счетчики, гистограммы задержек и вычисляемые показатели.
+ * Метрика определяется именем и набором меток в виде пар ключ-значение, например
+ * {@code Metrics.counter("multon_reports_total", "reason", "full_duplicate")}.
+ * Содержимое отдается в текстовом формате Prometheus через {@link #scrape()}.
+ */
+public final class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static LongAdder counter(String name, String... labels) {
+        return family(name, "counter").get(labels, LongAdder::new);
+    }
+
+    public static LatencyHistogram histogram(String name, String... labels) {
+        return family(name, "summary").get(labels, LatencyHistogram::new);
+    }
+
+    /**
+     * Регистрирует показатель, значение которого вычисляется в момент выгрузки.
+     * Повторная регистрация с теми же метками заменяет функцию.
+     */
+    public static void gauge(String name, DoubleSupplier value, String... labels) {
+        family(name, "gauge").metrics.put(labelsOf(labels), value);
+    }
+
+    /**
+     * @return все метрики в текстовом формате Prometheus
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder();
+        new TreeMap<>(families).forEach((name, family) -> {
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            new TreeMap<>(family.metrics).forEach((labels, metric) -> {
+                if (metric instanceof LongAdder counter) {
+                    line(out, name, labels, counter.sum());
+                } else if (metric instanceof DoubleSupplier gauge) {
+                    line(out, name, labels, gauge.getAsDouble());
+                } else if (metric instanceof LatencyHistogram histogram) {
+                    for (double quantile : QUANTILES) {
+                        String withQuantile = (labels.isEmpty() ? "" : labels + ",")
+                                + "quantile=\"" + quantile + "\"";
+                        line(out, name, withQuantile, histogram.quantile(quantile) / 1_000_000.0);
+                    }
+                    line(out, name + "_sum", labels, histogram.getSumMicros() / 1_000_000.0);
+                    line(out, name + "_count", labels, histogram.getCount());
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    /**
+     * Удаляет все метрики. Нужен для тестов.
+     */
+    public static void clear() {
+        families.clear();
+    }
+
+    private static Family family(String name, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Метрика " + name + " уже зарегистрирована с типом " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelsOf(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Метки задаются парами ключ-значение");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return result.toString();
+    }
+
+    private static void line(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.6f", value));
+        }
+        out.append('\n');
+    }
+
+    private static final class Family {
+        private final String type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        private Family(String type) {
+            this.type = type;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T get(String[] labels, Supplier<T> factory) {
+            return (T) metrics.computeIfAbsent(labelsOf(labels), key -> factory.get());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package by.vdavdov.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Итоговое событие обработки одного отчета для лога событий:
+ * ID, причина отклонения, результат, общее время и время каждого шага.
+ * Пишется одной строкой key=value, например
+ * {@code target=default report=42 reason=partial_duplicate outcome=RECALCULATED total_ms=830 codes_ms=120 ...}.
+ */
+public class ReportEvent {
+    private final String target;
+    private final String reportId;
+    private final String reason;
+    private final long startedNanos = System.nanoTime();
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private long totalNanos = -1;
+    private String outcome = "NONE";
+    private String error;
+
+    public ReportEvent(String target, String reportId, String reason) {
+        this.target = target;
+        this.reportId = reportId;
+        this.reason = reason;
+    }
+
+    /**
+     * Добавляет время шага. Повторные вызовы одного шага суммируются.
+     */
+    public synchronized void stage(String name, long nanos) {
+        stageNanos.merge(name, nanos, Long::sum);
+    }
+
+    public synchronized void outcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    public synchronized void error(Throwable error) {
+        this.error = error.getClass().getSimpleName();
+    }
+
+    /**
+     * Фиксирует общее время обработки.
+     */
+    public synchronized void complete() {
+        totalNanos = System.nanoTime() - startedNanos;
+    }
+
+    public synchronized String getOutcome() {
+        return outcome;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder result = new StringBuilder()
+                .append("target=").append(target)
+                .append(" report=").append(reportId)
+                .append(" reason=").append(reason)
+                .append(" outcome=").append(outcome)
+                .append(" total_ms=").append(TimeUnit.NANOSECONDS.toMillis(
+                        totalNanos >= 0 ? totalNanos : System.nanoTime() - startedNanos));
+        stageNanos.forEach((name, nanos) ->
+                result.append(' ').append(name).append("_ms=").append(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        if (error != null) {
+            result.append(" error=").append(error);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package by.vdavdov.utils;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Фиксированный набор блокировок, выбираемых по хешу ключа.
+ * Одинаковые ключи всегда получают одну и ту же блокировку, разные ключи
+ * чаще всего расходятся по разным, при этом память не растет с числом ключей.
+ * Используется ReentrantLock, а не synchronized, чтобы не закреплять виртуальные потоки.
+ */
+public class StripedLock {
+    private final Lock[] stripes;
+
+    public StripedLock(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Количество блокировок должно быть больше нуля");
+        }
+        this.stripes = new Lock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Отдает блокировку для ключа.
+     *
+     * @param key ключ, например номер заказа
+     * @return блокировка, общая для всех равных ключей
+     */
+    public Lock get(Object key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+}
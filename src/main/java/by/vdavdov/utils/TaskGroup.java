@@ -0,0 +1,102 @@
+package by.vdavdov.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Группа задач на виртуальных потоках с ограничением параллельности.
+ * В отличие от ExecutorService.close(), позволяет добавлять задачи из уже
+ * запущенных задач и дожидаться завершения всех, включая добавленные позже.
+ * Задачи ждут свободный слот в порядке добавления.
+ */
+public class TaskGroup implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(TaskGroup.class);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private long pending;
+
+    public TaskGroup(int concurrency) {
+        this.slots = new Semaphore(Math.max(1, concurrency), true);
+    }
+
+    /**
+     * Добавляет задачу в группу. Не блокирует вызывающий поток.
+     *
+     * @param task задача
+     */
+    public void submit(Runnable task) {
+        lock.lock();
+        try {
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+        executor.submit(() -> {
+            try {
+                slots.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    slots.release();
+                }
+            } catch (RuntimeException e) {
+                log.error("Необработанная ошибка в задаче", e);
+            } finally {
+                complete();
+            }
+        });
+    }
+
+    /**
+     * Ждет завершения всех задач группы.
+     *
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public void await() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending > 0) {
+                idle.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ждет завершения всех задач и освобождает потоки.
+     * Как и ExecutorService.close(), не бросает InterruptedException: при прерывании
+     * незавершенные задачи прерываются, а флаг прерывания потока восстанавливается.
+     * Чтобы получить InterruptedException, перед закрытием нужно вызвать {@link #await()}.
+     */
+    @Override
+    public void close() {
+        try {
+            await();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor.close();
+    }
+
+    private void complete() {
+        lock.lock();
+        try {
+            if (--pending == 0) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
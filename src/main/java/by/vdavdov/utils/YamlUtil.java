@@ -1,5 +1,6 @@
 package by.vdavdov.utils;
 
+import by.vdavdov.model.Target;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.yaml.snakeyaml.Yaml;
@@ -10,6 +11,8 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class YamlUtil {
@@ -19,6 +22,69 @@ public class YamlUtil {
     public static String authLogin;
     public static String authPassword;
     public static int scheduleInterval;
+    public static boolean scheduleAdaptive = false;
+    public static int scheduleMinDelaySeconds = 5;
+    public static int scheduleMaxParallelTargets = 0;
+    public static List<Target> targets = new ArrayList<>();
+    public static int authRefreshBefore = 60;
+    public static int httpConnectTimeout = 10;
+    public static int httpRequestTimeout = 60;
+    public static int httpMaxRequestsPerHost = 16;
+    public static int httpExecutorThreads = 4;
+    public static int httpKeepAlive = 300;
+    public static boolean httpCompression = true;
+    public static int httpRequestCompressionMinBytes = 0;
+    public static int limiterInitialLimit = 8;
+    public static int limiterMinLimit = 1;
+    public static int limiterMaxLimit = 64;
+    public static double limiterLatencyTolerance = 2.0;
+    public static int retryMaxAttempts = 3;
+    public static int retryBaseDelayMillis = 200;
+    public static int retryMaxDelayMillis = 5000;
+    public static int retryDeferredRounds = 2;
+    public static int retryDeferredDelaySeconds = 10;
+    public static int circuitFailureThreshold = 5;
+    public static int circuitOpenSeconds = 30;
+    public static boolean metricsEnabled = true;
+    public static String metricsHost = "127.0.0.1";
+    public static int metricsPort = 9404;
+    public static int loggingPayloadBytes = 2048;
+    public static double loggingPayloadSampleRate = 1.0;
+    public static int processingConcurrency = 1;
+    public static int cancelConcurrency = 8;
+    public static int discoveryPageSize = 50;
+    public static int discoveryMinPageSize = 10;
+    public static int discoveryMaxPageSize = 500;
+    public static int discoveryTargetLatencyMillis = 1000;
+    public static int discoveryParallelPages = 4;
+    public static boolean cacheEnabled = true;
+    public static String cacheDirectory = "cache/regulator";
+    public static int cacheMaxSizeMb = 512;
+    public static int cacheTtlHours = 168;
+    public static int removalChunkSize = 500;
+    public static int removalMaxIterations = 3;
+    public static String lastRunFile = "last_run.txt";
+    public static String journalFile = "journal.dat";
+    public static int journalRetentionHours = 72;
+    public static String processedFile = "processed_reports.txt";
+    public static int processedTtlHours = 24;
+    public static int processedExpectedReports = 100_000;
+    public static boolean datasourceEnabled = false;
+    public static String datasourceUrl;
+    public static String datasourceUsername;
+    public static String datasourcePassword;
+    public static int datasourcePoolSize = 4;
+    public static int datasourceFetchSize = 5000;
+    public static String datasourceReportsQuery =
+            "SELECT id, rejection_reason, order_number FROM code_usage_report"
+                    + " WHERE status = 'REJECTED' AND updated >= ?";
+    public static String datasourceCodesQuery =
+            "SELECT code FROM code_usage_report_code WHERE report_id = ?";
+    public static boolean coordinationEnabled = false;
+    public static String coordinationInstanceId;
+    public static int coordinationLeaseSeconds = 120;
+    public static int coordinationHeartbeatSeconds = 30;
+    public static int coordinationBatchSize = 32;
 
 
     public static void loadInternalConfig() throws IOException {
@@ -53,24 +119,193 @@ public class YamlUtil {
         Map<String, Object> schedule = getMapValue(config, "schedule");
         if (schedule != null) {
             scheduleInterval = getIntValue(schedule, "interval");
+            scheduleAdaptive = "adaptive".equalsIgnoreCase(getStringValue(schedule, "mode", "fixed"));
+            scheduleMinDelaySeconds = getIntValue(schedule, "minDelaySeconds", scheduleMinDelaySeconds);
+            scheduleMaxParallelTargets = getIntValue(schedule, "maxParallelTargets", scheduleMaxParallelTargets);
         }
 
         Map<String, Object> authConfig = getMapValue(config, "auth");
         if (authConfig != null) {
             authLogin = getStringValue(authConfig, "login");
             authPassword = getStringValue(authConfig, "password");
+            authRefreshBefore = getIntValue(authConfig, "refreshBefore", authRefreshBefore);
         }
 
+        Map<String, Object> httpConfig = getMapValue(config, "http");
+        if (httpConfig != null) {
+            httpConnectTimeout = getIntValue(httpConfig, "connectTimeout", httpConnectTimeout);
+            httpRequestTimeout = getIntValue(httpConfig, "requestTimeout", httpRequestTimeout);
+            httpMaxRequestsPerHost = getIntValue(httpConfig, "maxConnectionsPerHost", httpMaxRequestsPerHost);
+            httpMaxRequestsPerHost = getIntValue(httpConfig, "maxRequestsPerHost", httpMaxRequestsPerHost);
+            httpExecutorThreads = getIntValue(httpConfig, "executorThreads", httpExecutorThreads);
+            httpKeepAlive = getIntValue(httpConfig, "keepAlive", httpKeepAlive);
+            httpCompression = getBooleanValue(httpConfig, "compression", httpCompression);
+            httpRequestCompressionMinBytes = getIntValue(httpConfig, "requestCompressionMinBytes", httpRequestCompressionMinBytes);
+        }
+
+        Map<String, Object> limiter = getMapValue(config, "limiter");
+        if (limiter != null) {
+            limiterInitialLimit = getIntValue(limiter, "initialLimit", limiterInitialLimit);
+            limiterMinLimit = getIntValue(limiter, "minLimit", limiterMinLimit);
+            limiterMaxLimit = getIntValue(limiter, "maxLimit", limiterMaxLimit);
+            limiterLatencyTolerance = getDoubleValue(limiter, "latencyTolerance", limiterLatencyTolerance);
+        }
+
+        Map<String, Object> retry = getMapValue(config, "retry");
+        if (retry != null) {
+            retryMaxAttempts = getIntValue(retry, "maxAttempts", retryMaxAttempts);
+            retryBaseDelayMillis = getIntValue(retry, "baseDelayMillis", retryBaseDelayMillis);
+            retryMaxDelayMillis = getIntValue(retry, "maxDelayMillis", retryMaxDelayMillis);
+            retryDeferredRounds = getIntValue(retry, "deferredRounds", retryDeferredRounds);
+            retryDeferredDelaySeconds = getIntValue(retry, "deferredDelaySeconds", retryDeferredDelaySeconds);
+        }
+
+        Map<String, Object> circuit = getMapValue(config, "circuit");
+        if (circuit != null) {
+            circuitFailureThreshold = getIntValue(circuit, "failureThreshold", circuitFailureThreshold);
+            circuitOpenSeconds = getIntValue(circuit, "openSeconds", circuitOpenSeconds);
+        }
+
+        Map<String, Object> metrics = getMapValue(config, "metrics");
+        if (metrics != null) {
+            metricsEnabled = getBooleanValue(metrics, "enabled", metricsEnabled);
+            metricsHost = getStringValue(metrics, "host", metricsHost);
+            metricsPort = getIntValue(metrics, "port", metricsPort);
+        }
+
+        Map<String, Object> logging = getMapValue(config, "logging");
+        if (logging != null) {
+            loggingPayloadBytes = getIntValue(logging, "payloadBytes", loggingPayloadBytes);
+            loggingPayloadSampleRate = getDoubleValue(logging, "payloadSampleRate", loggingPayloadSampleRate);
+        }
+
+        Map<String, Object> cancel = getMapValue(config, "cancel");
+        if (cancel != null) {
+            cancelConcurrency = getIntValue(cancel, "concurrency", cancelConcurrency);
+        }
+
+        Map<String, Object> processing = getMapValue(config, "processing");
+        if (processing != null) {
+            processingConcurrency = getIntValue(processing, "concurrency", processingConcurrency);
+        }
+
+        Map<String, Object> discovery = getMapValue(config, "discovery");
+        if (discovery != null) {
+            discoveryPageSize = getIntValue(discovery, "pageSize", discoveryPageSize);
+            discoveryMinPageSize = getIntValue(discovery, "minPageSize", discoveryMinPageSize);
+            discoveryMaxPageSize = getIntValue(discovery, "maxPageSize", discoveryMaxPageSize);
+            discoveryTargetLatencyMillis = getIntValue(discovery, "targetLatencyMillis", discoveryTargetLatencyMillis);
+            discoveryParallelPages = getIntValue(discovery, "parallelPages", discoveryParallelPages);
+        }
+
+        Map<String, Object> cache = getMapValue(config, "cache");
+        if (cache != null) {
+            cacheEnabled = getBooleanValue(cache, "enabled", cacheEnabled);
+            cacheDirectory = getStringValue(cache, "directory", cacheDirectory);
+            cacheMaxSizeMb = getIntValue(cache, "maxSizeMb", cacheMaxSizeMb);
+            cacheTtlHours = getIntValue(cache, "ttlHours", cacheTtlHours);
+        }
+
+        Map<String, Object> removal = getMapValue(config, "removal");
+        if (removal != null) {
+            removalChunkSize = getIntValue(removal, "chunkSize", removalChunkSize);
+            removalMaxIterations = getIntValue(removal, "maxIterations", removalMaxIterations);
+        }
+
+        Map<String, Object> lastRun = getMapValue(config, "lastRun");
+        if (lastRun != null) {
+            lastRunFile = getStringValue(lastRun, "file", lastRunFile);
+        }
+
+        Map<String, Object> journal = getMapValue(config, "journal");
+        if (journal != null) {
+            journalFile = getStringValue(journal, "file", journalFile);
+            journalRetentionHours = getIntValue(journal, "retentionHours", journalRetentionHours);
+        }
+
+        Map<String, Object> processed = getMapValue(config, "processed");
+        if (processed != null) {
+            processedFile = getStringValue(processed, "file", processedFile);
+            processedTtlHours = getIntValue(processed, "ttlHours", processedTtlHours);
+            processedExpectedReports = getIntValue(processed, "expectedReports", processedExpectedReports);
+        }
+
+        Map<String, Object> datasource = getMapValue(config, "datasource");
+        if (datasource != null) {
+            datasourceEnabled = getBooleanValue(datasource, "enabled", datasourceEnabled);
+            datasourceUrl = getStringValue(datasource, "url");
+            datasourceUsername = getStringValue(datasource, "username");
+            datasourcePassword = getStringValue(datasource, "password");
+            datasourcePoolSize = getIntValue(datasource, "poolSize", datasourcePoolSize);
+            datasourceFetchSize = getIntValue(datasource, "fetchSize", datasourceFetchSize);
+            datasourceReportsQuery = getStringValue(datasource, "reportsQuery", datasourceReportsQuery);
+            datasourceCodesQuery = getStringValue(datasource, "codesQuery", datasourceCodesQuery);
+        }
+
+        Map<String, Object> coordination = getMapValue(config, "coordination");
+        if (coordination != null) {
+            coordinationEnabled = getBooleanValue(coordination, "enabled", coordinationEnabled);
+            coordinationInstanceId = getStringValue(coordination, "instanceId", coordinationInstanceId);
+            coordinationLeaseSeconds = getIntValue(coordination, "leaseSeconds", coordinationLeaseSeconds);
+            coordinationHeartbeatSeconds = getIntValue(coordination, "heartbeatSeconds", coordinationHeartbeatSeconds);
+            coordinationBatchSize = getIntValue(coordination, "batchSize", coordinationBatchSize);
+        }
+
+        targets = parseTargets(config.get("targets"));
+
         logConfig();
     }
 
+    /**
+     * Цель по умолчанию из host и auth верхнего уровня, с файлами состояния в рабочем каталоге.
+     */
+    public static Target defaultTarget() {
+        return new Target("default", host, authLogin, authPassword, processingConcurrency, null, datasourceEnabled);
+    }
+
+    /**
+     * Разбирает список targets. Без списка работает одна цель из host и auth верхнего уровня.
+     * Незаданные у цели параметры берутся из верхнего уровня, файлы состояния
+     * по умолчанию хранятся в state/имя_цели.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Target> parseTargets(Object value) {
+        List<Target> result = new ArrayList<>();
+        if (!(value instanceof List<?> list) || list.isEmpty()) {
+            result.add(defaultTarget());
+            return result;
+        }
+        for (Object element : list) {
+            if (!(element instanceof Map)) {
+                throw new IllegalArgumentException("Элемент targets должен быть объектом");
+            }
+            Map<String, Object> target = (Map<String, Object>) element;
+            String name = getStringValue(target, "name");
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("У цели в targets не задано имя");
+            }
+            if (result.stream().anyMatch(existing -> existing.getName().equals(name))) {
+                throw new IllegalArgumentException("Цель " + name + " указана в targets несколько раз");
+            }
+            result.add(new Target(name,
+                    getStringValue(target, "host", host),
+                    getStringValue(target, "login", authLogin),
+                    getStringValue(target, "password", authPassword),
+                    getIntValue(target, "concurrency", processingConcurrency),
+                    Path.of(getStringValue(target, "stateDirectory", "state/" + name)),
+                    getBooleanValue(target, "datasource", false)));
+        }
+        return result;
+    }
+
     private static void logConfig() {
         log.info("Конфигурация загружена \n" +
                         "host: {} \n" +
                         "login: {} \n" +
                         "password: {} \n" +
-                        "периодичность проверки: {} \n"
-                , host, authLogin, authPassword, scheduleInterval);
+                        "периодичность проверки: {} \n" +
+                        "цели: {} \n"
+                , host, authLogin, authPassword, scheduleInterval, targets);
     }
 
     private static String getStringValue(Map<String, Object> config, String key) {
@@ -78,6 +313,31 @@ public class YamlUtil {
         return value != null ? value.toString() : null;
     }
 
+    private static String getStringValue(Map<String, Object> config, String key, String defaultValue) {
+        String value = getStringValue(config, key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static double getDoubleValue(Map<String, Object> config, String key, double defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value != null) {
+            return Double.parseDouble(value.toString());
+        }
+        return defaultValue;
+    }
+
+    private static boolean getBooleanValue(Map<String, Object> config, String key, boolean defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value != null) {
+            return Boolean.parseBoolean(value.toString());
+        }
+        return defaultValue;
+    }
+
     private static Map<String, Object> getMapValue(Map<String, Object> config, String key) {
         Object value = config.get(key);
         if (value instanceof Map) {
@@ -86,6 +346,10 @@ public class YamlUtil {
         return null;
     }
 
+    private static int getIntValue(Map<String, Object> config, String key, int defaultValue) {
+        return config.containsKey(key) ? getIntValue(config, key) : defaultValue;
+    }
+
     private static int getIntValue(Map<String, Object> config, String key) {
         Object value = config.get(key);
         if (value instanceof Integer) {
@@ -0,0 +1,47 @@
+package by.vdavdov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthServiceTest {
+
+    @Test
+    void when_token_has_exp_then_return_it() {
+        String payload = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"user\",\"exp\":1742230000}".getBytes(StandardCharsets.UTF_8));
+        String token = "eyJhbGciOiJIUzI1NiJ9." + payload + ".signature";
+
+        assertEquals(Instant.ofEpochSecond(1742230000), AuthService.readExpiration(token));
+    }
+
+    @Test
+    void when_token_is_not_jwt_then_return_default_ttl() {
+        Instant expiration = AuthService.readExpiration("opaque-token");
+        assertTrue(expiration.isAfter(Instant.now()));
+    }
+
+    @Test
+    void when_token_lifetime_is_shorter_than_refresh_margin_then_refresh_at_half_lifetime() {
+        Instant now = Instant.parse("2025-03-17T10:00:00Z");
+
+        assertEquals(now.plusSeconds(20),
+                AuthService.refreshAt(now, now.plusSeconds(40), Duration.ofSeconds(60)));
+        assertEquals(now.plusSeconds(240),
+                AuthService.refreshAt(now, now.plusSeconds(300), Duration.ofSeconds(60)));
+    }
+
+    @Test
+    void when_token_is_already_expired_then_refresh_is_not_immediate() {
+        Instant now = Instant.parse("2025-03-17T10:00:00Z");
+
+        Instant refreshAt = AuthService.refreshAt(now, now.minusSeconds(30), Duration.ofSeconds(60));
+
+        assertEquals(now.plus(Duration.ofMinutes(5).dividedBy(2)), refreshAt);
+    }
+}
@@ -1,14 +1,20 @@
 package by.vdavdov.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import by.vdavdov.model.Target;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class CheckReportsServiceTest {
-    final CheckReportsService checkReportsService = new CheckReportsService();
+    @TempDir
+    Path stateDirectory;
+    CheckReportsService checkReportsService;
     private final String testInnerJson = "{\"cisList\":[{\"cis\":\"01046100115000532150FLfHxnWiqF%\",\"code\":1,\"description\":\"Повторное нанесение кода\"},{\"cis\":\"01046100115000532150GCgOFD(l_/Z\",\"code\":0,\"description\":\"Ok\"}]}";
     private final String testContent =
             """
@@ -18,11 +24,22 @@ class CheckReportsServiceTest {
                     }
             """;
 
+    @BeforeEach
+    void setUp() {
+        // Журнал, список обработанных и кеш создаются во временном каталоге, а не в корне репозитория
+        checkReportsService = new CheckReportsService(
+                new Target("test", "http://localhost", "login", "password", 1, stateDirectory, false));
+    }
+
+    @AfterEach
+    void tearDown() {
+        checkReportsService.close();
+    }
+
     @Test
     void when_content_is_ok_then_return_innerJson() throws IOException {
         String innerJson = checkReportsService.getInnerJson(testContent);
         assertNotNull(innerJson);
         assertEquals(testInnerJson, innerJson);
     }
-
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package by.vdavdov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeRemovalPlannerTest {
+
+    @Test
+    void when_server_removes_everything_then_one_verification_is_made() throws Exception {
+        List<String> codes = IntStream.range(0, 1200).mapToObj(String::valueOf).toList();
+        List<Integer> requests = new ArrayList<>();
+        int[] verifications = {0};
+
+        boolean removed = new CodeRemovalPlanner(500, 3).execute("report", codes,
+                chunk -> requests.add(chunk.size()),
+                () -> {
+                    verifications[0]++;
+                    return List.of();
+                });
+
+        assertTrue(removed);
+        assertEquals(List.of(500, 500, 200), requests);
+        assertEquals(1, verifications[0]);
+    }
+
+    @Test
+    void when_server_ignores_a_code_then_stop_after_max_iterations() throws Exception {
+        int[] requests = {0};
+
+        boolean removed = new CodeRemovalPlanner(500, 3).execute("report", List.of("a", "b"),
+                chunk -> requests[0]++,
+                () -> List.of("b"));
+
+        assertFalse(removed);
+        assertEquals(3, requests[0]);
+    }
+}
@@ -0,0 +1,119 @@
+package by.vdavdov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpCompressionTest {
+    private static final String BODY = "{\"description\":\"Повторное нанесение кода\"}";
+
+    @Test
+    void when_response_is_gzip_deflate_or_identity_then_body_is_decoded() throws Exception {
+        byte[] plain = BODY.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(BODY, receive(HttpCompression.ofString(), "gzip", null, HttpCompression.gzip(plain)));
+        assertEquals(BODY, receive(HttpCompression.ofString(), "deflate", null, deflate(plain)));
+        assertEquals(BODY, receive(HttpCompression.ofString(), null, null, plain));
+        assertEquals(BODY, receive(HttpCompression.ofString(), "identity", null, plain));
+
+        try (InputStream gzip = receive(HttpCompression.ofInputStream(), "gzip", null, HttpCompression.gzip(plain));
+             InputStream deflate = receive(HttpCompression.ofInputStream(), "deflate", null, deflate(plain));
+             InputStream identity = receive(HttpCompression.ofInputStream(), null, null, plain)) {
+            assertEquals(BODY, new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals(BODY, new String(deflate.readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals(BODY, new String(identity.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void when_content_type_has_charset_then_string_is_decoded_with_it() {
+        Charset windows1251 = Charset.forName("windows-1251");
+        byte[] encoded = HttpCompression.gzip(BODY.getBytes(windows1251));
+
+        assertEquals(BODY, receive(HttpCompression.ofString(), "gzip",
+                "application/json; charset=\"windows-1251\"", encoded));
+    }
+
+    @Test
+    void when_stream_is_closed_without_reading_then_body_is_not_awaited() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        HttpResponse.BodySubscriber<InputStream> subscriber = HttpCompression.ofInputStream()
+                .apply(new Info(headers("gzip", null)));
+        subscriber.onSubscribe(subscription(cancelled));
+
+        // Тело еще не пришло: распаковка заголовка gzip при закрытии заблокировала бы поток
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            InputStream body = subscriber.getBody().toCompletableFuture().join();
+            body.close();
+        });
+        assertTrue(cancelled.get());
+    }
+
+    private static <T> T receive(HttpResponse.BodyHandler<T> handler, String encoding, String contentType, byte[] body) {
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(new Info(headers(encoding, contentType)));
+        subscriber.onSubscribe(subscription(new AtomicBoolean()));
+        subscriber.onNext(List.of(ByteBuffer.wrap(body)));
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+
+    private static HttpHeaders headers(String encoding, String contentType) {
+        Map<String, List<String>> headers = new HashMap<>();
+        if (encoding != null) {
+            headers.put("Content-Encoding", List.of(encoding));
+        }
+        if (contentType != null) {
+            headers.put("Content-Type", List.of(contentType));
+        }
+        return HttpHeaders.of(headers, (name, value) -> true);
+    }
+
+    private static Flow.Subscription subscription(AtomicBoolean cancelled) {
+        return new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        };
+    }
+
+    private static byte[] deflate(byte[] body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private record Info(HttpHeaders headers) implements HttpResponse.ResponseInfo {
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
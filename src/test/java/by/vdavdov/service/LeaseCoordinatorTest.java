@@ -0,0 +1,110 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ContentItem;
+import by.vdavdov.model.ReportStage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Запускается только при заданной переменной MULTON_TEST_DB_URL, как и {@link PostgresReportsReaderTest}.
+ */
+class LeaseCoordinatorTest {
+    private DatabaseService database;
+    private final List<LeaseCoordinator> coordinators = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        String url = System.getenv("MULTON_TEST_DB_URL");
+        assumeTrue(url != null, "MULTON_TEST_DB_URL не задан");
+        database = new DatabaseService(url, System.getenv("MULTON_TEST_DB_USER"),
+                System.getenv("MULTON_TEST_DB_PASSWORD"), 4);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (database == null) {
+            return;
+        }
+        coordinators.forEach(LeaseCoordinator::close);
+        try (Connection connection = database.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS multon_report_lease");
+            statement.execute("DROP TABLE IF EXISTS multon_watermark");
+        }
+        database.close();
+    }
+
+    @Test
+    void when_two_instances_claim_then_reports_are_split_and_expired_leases_are_reclaimed() throws Exception {
+        LeaseCoordinator first = coordinator("pod-a", 1);
+        LeaseCoordinator second = coordinator("pod-b", 1);
+        assertEquals(10, first.offer(items(10)));
+        assertEquals(0, second.offer(items(10)));
+
+        List<LeaseCoordinator.Lease> firstLeases = first.claim(4);
+        List<LeaseCoordinator.Lease> secondLeases = second.claim(100);
+        assertEquals(4, firstLeases.size());
+        assertEquals(6, secondLeases.size());
+        Set<String> ids = new HashSet<>();
+        firstLeases.forEach(lease -> ids.add(lease.item().getId()));
+        secondLeases.forEach(lease -> ids.add(lease.item().getId()));
+        assertEquals(10, ids.size());
+
+        secondLeases.forEach(lease -> second.complete(lease.item().getId(), ReportStage.CANCELLED));
+        first.progress(firstLeases.get(0).item().getId(), ReportStage.CODES_REMOVED);
+
+        // pod-a "упал": аренда не продлевается и через секунду отчеты забирает pod-b
+        Thread.sleep(1500);
+        List<LeaseCoordinator.Lease> reclaimed = second.claim(100);
+        assertEquals(4, reclaimed.size());
+        assertTrue(reclaimed.stream().anyMatch(lease -> lease.stage() == ReportStage.CODES_REMOVED));
+        assertTrue(second.claim(100).isEmpty());
+    }
+
+    @Test
+    void when_watermark_is_taken_then_other_instance_skips_discovery_until_release() throws Exception {
+        LeaseCoordinator first = coordinator("pod-a", 60);
+        LeaseCoordinator second = coordinator("pod-b", 60);
+        Instant initial = Instant.now().minus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MILLIS);
+
+        assertEquals(initial, first.acquireWatermark(initial));
+        assertNull(second.acquireWatermark(initial));
+
+        Instant next = initial.plus(1, ChronoUnit.HOURS);
+        first.releaseWatermark(next);
+        assertEquals(next, second.acquireWatermark(initial));
+    }
+
+    private LeaseCoordinator coordinator(String instanceId, int leaseSeconds) throws Exception {
+        LeaseCoordinator coordinator = new LeaseCoordinator(database.getDataSource(), "test", instanceId,
+                leaseSeconds, 3600, Duration.ofHours(1));
+        coordinators.add(coordinator);
+        return coordinator;
+    }
+
+    private static List<ContentItem> items(int count) {
+        List<ContentItem> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ContentItem item = new ContentItem();
+            item.setId("report-" + i);
+            item.setRejectionReason("Повторное нанесение кода");
+            item.setOrderNumber("ORD-" + i);
+            items.add(item);
+        }
+        return items;
+    }
+}
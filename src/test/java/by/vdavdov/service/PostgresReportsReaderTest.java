@@ -0,0 +1,83 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ContentItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Запускается только при заданной переменной MULTON_TEST_DB_URL, например
+ * jdbc:postgresql://localhost:5432/postgres (логин и пароль - MULTON_TEST_DB_USER и MULTON_TEST_DB_PASSWORD).
+ */
+class PostgresReportsReaderTest {
+    private static final String REPORTS_QUERY =
+            "SELECT id, rejection_reason, order_number FROM test_report WHERE status = 'REJECTED' AND updated >= ?";
+    private static final String CODES_QUERY = "SELECT code FROM test_report_code WHERE report_id = ?";
+
+    private DatabaseService database;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = System.getenv("MULTON_TEST_DB_URL");
+        assumeTrue(url != null, "MULTON_TEST_DB_URL не задан");
+        database = new DatabaseService(url, System.getenv("MULTON_TEST_DB_USER"),
+                System.getenv("MULTON_TEST_DB_PASSWORD"), 2);
+
+        try (Connection connection = database.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE test_report (id uuid PRIMARY KEY, status text,"
+                    + " rejection_reason text, order_number text, updated timestamptz)");
+            statement.execute("CREATE TABLE test_report_code (report_id uuid, code text)");
+            statement.execute("INSERT INTO test_report VALUES"
+                    + " ('00000000-0000-0000-0000-000000000001', 'REJECTED', 'Повторное нанесение', 'ORD-1', now()),"
+                    + " ('00000000-0000-0000-0000-000000000002', 'ACCEPTED', null, 'ORD-2', now()),"
+                    + " ('00000000-0000-0000-0000-000000000003', 'REJECTED', 'Дубликат кода', null, now() - interval '2 days')");
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO test_report_code VALUES ('00000000-0000-0000-0000-000000000001', ?)")) {
+                for (int i = 0; i < 25_000; i++) {
+                    insert.setString(1, "0104610011500053215" + i + "\u001d93abc");
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (database == null) {
+            return;
+        }
+        try (Connection connection = database.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS test_report");
+            statement.execute("DROP TABLE IF EXISTS test_report_code");
+        }
+        database.close();
+    }
+
+    @Test
+    void when_reading_from_database_then_only_rejected_reports_and_all_codes_are_returned() throws Exception {
+        PostgresReportsReader reader = new PostgresReportsReader(database.getDataSource(), REPORTS_QUERY, CODES_QUERY, 1000);
+
+        List<ContentItem> reports = new ArrayList<>();
+        reader.forEachRejectedReport(Instant.now().minus(1, ChronoUnit.DAYS), reports::add);
+        assertEquals(1, reports.size());
+        assertEquals("ORD-1", reports.get(0).getOrderNumber());
+
+        int[] codes = {0};
+        assertEquals(25_000, reader.forEachCode(reports.get(0).getId(), code -> codes[0]++));
+        assertEquals(25_000, codes[0]);
+    }
+}
@@ -0,0 +1,42 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ReportStage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessedReportsFilterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void when_filter_is_flushed_then_expired_reports_are_dropped_and_file_is_rewritten() throws Exception {
+        Path file = directory.resolve("processed_reports.txt");
+        ProcessedReportsFilter filter = new ProcessedReportsFilter(file, Duration.ofMillis(200), 1000);
+        filter.add("old", ReportStage.CANCELLED);
+        filter.add("old", ReportStage.CANCELLED);
+        Thread.sleep(300);
+        filter.add("fresh", ReportStage.RECALCULATED);
+        assertEquals(3, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+
+        filter.flush();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("fresh;RECALCULATED;"));
+        assertFalse(filter.contains("old"));
+        assertTrue(filter.contains("fresh"));
+
+        // Отчет, добавленный после пересборки фильтра Блума, тоже находится
+        filter.add("next", ReportStage.MANUAL);
+        assertTrue(filter.contains("next"));
+        assertTrue(new ProcessedReportsFilter(file, Duration.ofHours(1), 1000).contains("next"));
+    }
+}
@@ -0,0 +1,44 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.CisEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegulatorResponseDecoderTest {
+    final RegulatorResponseDecoder decoder = new RegulatorResponseDecoder();
+    private final String testContent =
+            """
+                    {
+                      "content": "HTTP/1.1 200 OK\\nServer: nginx\\nContent-Type: application/json; charset=UTF-8\\n\\n{\\"content\\":\\"{\\\\\\"cisList\\\\\\":[{\\\\\\"cis\\\\\\":\\\\\\"01046100115000532150FLfHxnWiqF%\\\\\\",\\\\\\"code\\\\\\":1,\\\\\\"description\\\\\\":\\\\\\"Повторное нанесение кода\\\\\\"},{\\\\\\"cis\\\\\\":\\\\\\"01046100115000532150GCgOFD(l_/Z\\\\\\",\\\\\\"code\\\\\\":0,\\\\\\"description\\\\\\":\\\\\\"Ok\\\\\\"}]}\\"}",
+                      "size": 594
+                    }
+            """;
+
+    @Test
+    void when_content_is_ok_then_return_cis_list() {
+        List<CisEntry> entries = decoder.decode(testContent);
+
+        assertEquals(2, entries.size());
+        assertEquals("01046100115000532150FLfHxnWiqF%", entries.get(0).getCis());
+        assertEquals("Повторное нанесение кода", entries.get(0).getDescription());
+        assertEquals("Ok", entries.get(1).getDescription());
+    }
+
+    @Test
+    void when_message_has_no_body_then_return_null() {
+        assertNull(decoder.decode("{\"content\":\"HTTP/1.1 502 Bad Gateway\\nServer: nginx\"}"));
+    }
+
+    @Test
+    void when_inner_json_has_no_cis_list_then_return_empty_list() {
+        String response = "{\"content\":\"HTTP/1.1 200 OK\\n\\n{\\\"content\\\":\\\"{\\\\\\\"status\\\\\\\":\\\\\\\"OK\\\\\\\"}\\\"}\"}";
+
+        List<CisEntry> entries = decoder.decode(response);
+
+        assertNotNull(entries);
+        assertTrue(entries.isEmpty());
+    }
+}
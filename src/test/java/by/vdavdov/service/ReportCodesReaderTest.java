@@ -0,0 +1,38 @@
+package by.vdavdov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportCodesReaderTest {
+
+    @Test
+    void when_page_is_read_then_codes_are_emitted_in_order() throws IOException {
+        String json = """
+                {"content":[
+                  {"code":"0104610011500053215abc\\u001d93dGVz","meta":{"nested":[1,2]}},
+                  {"status":"OK","code":"0104610011500053215def"}
+                ],"totalPages":3,"last":false,"number":0}
+                """;
+        List<String> codes = new ArrayList<>();
+
+        ReportCodesReader.CodesPage page = ReportCodesReader.readPage(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), codes::add);
+
+        assertEquals(List.of("0104610011500053215abc\u001d93dGVz", "0104610011500053215def"), codes);
+        assertEquals(2, page.count());
+        assertFalse(page.isLast(0));
+    }
+
+    @Test
+    void when_last_is_absent_then_total_pages_decides() {
+        assertFalse(new ReportCodesReader.CodesPage(1000, null, 3).isLast(1));
+        assertTrue(new ReportCodesReader.CodesPage(1000, null, 3).isLast(2));
+    }
+}
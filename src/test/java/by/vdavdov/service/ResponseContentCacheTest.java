@@ -0,0 +1,102 @@
+package by.vdavdov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseContentCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void when_entry_is_expired_or_corrupted_then_it_is_removed() throws Exception {
+        ResponseContentCache expiring = new ResponseContentCache(directory.resolve("ttl"), 1 << 20, Duration.ZERO, true);
+        expiring.put("path/1", "{\"cisList\":[]}");
+        Thread.sleep(5);
+        assertEquals(Optional.empty(), expiring.get("path/1"));
+        assertEquals(0, entries(directory.resolve("ttl")).size());
+
+        ResponseContentCache cache = new ResponseContentCache(directory.resolve("crc"), 1 << 20, Duration.ofHours(1), true);
+        cache.put("path/2", "{\"cisList\":[]}");
+        assertEquals(Optional.of("{\"cisList\":[]}"), cache.get("path/2"));
+
+        // Портим контрольную сумму в заголовке: magic(4) + время(8) + crc(8)
+        Path file = entries(directory.resolve("crc")).get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[15] ^= 0x5A;
+        Files.write(file, bytes);
+
+        assertEquals(Optional.empty(), cache.get("path/2"));
+        assertEquals(0, entries(directory.resolve("crc")).size());
+        assertEquals(0, cache.sizeBytes());
+    }
+
+    @Test
+    void when_size_limit_is_exceeded_then_least_recently_read_entry_is_evicted() throws Exception {
+        Path probeDirectory = directory.resolve("probe");
+        ResponseContentCache probe = new ResponseContentCache(probeDirectory, Long.MAX_VALUE, Duration.ofHours(1), true);
+        probe.put("probe", content(0));
+        long entrySize = probe.sizeBytes();
+
+        ResponseContentCache cache = new ResponseContentCache(directory.resolve("lru"), entrySize * 5 / 2,
+                Duration.ofHours(1), true);
+        cache.put("a", content(1));
+        cache.put("b", content(2));
+        for (Path file : entries(directory.resolve("lru"))) {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(60)));
+        }
+        assertTrue(cache.get("a").isPresent());
+
+        cache.put("c", content(3));
+
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+        assertEquals(2, entries(directory.resolve("lru")).size());
+    }
+
+    @Test
+    void when_same_key_is_put_concurrently_then_size_is_counted_once() throws Exception {
+        ResponseContentCache cache = new ResponseContentCache(directory, 1 << 20, Duration.ofHours(1), true);
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 64; i++) {
+                executor.submit(() -> cache.put("same", content(7)));
+            }
+        }
+
+        List<Path> files = entries(directory);
+        assertEquals(1, files.size());
+        assertEquals(Files.size(files.get(0)), cache.sizeBytes());
+    }
+
+    private static List<Path> entries(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".gz")).toList();
+        }
+    }
+
+    /**
+     * @return плохо сжимаемое содержимое одинаковой длины
+     */
+    private static String content(int seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append((char) ('a' + random.nextInt(26)));
+        }
+        return content.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package by.vdavdov.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerServiceTest {
+
+    @Test
+    void when_run_completed_reports_then_poll_right_away() {
+        assertEquals(0, SchedulerService.nextDelayMillis(3, 40_000, 5_000, 3_600_000));
+    }
+
+    @Test
+    void when_no_work_then_back_off_exponentially_up_to_interval() {
+        long delay = SchedulerService.nextDelayMillis(0, 0, 5_000, 60_000);
+        assertEquals(5_000, delay);
+        delay = SchedulerService.nextDelayMillis(0, delay, 5_000, 60_000);
+        assertEquals(10_000, delay);
+        delay = SchedulerService.nextDelayMillis(0, 40_000, 5_000, 60_000);
+        assertEquals(60_000, delay);
+        assertEquals(60_000, SchedulerService.nextDelayMillis(0, delay, 5_000, 60_000));
+    }
+
+    @Test
+    void when_interval_is_zero_then_idle_delay_is_at_least_one_second() {
+        assertEquals(1_000, SchedulerService.nextDelayMillis(0, 0, 0, 0));
+        assertEquals(5_000, SchedulerService.nextDelayMillis(0, 5_000, 5_000, 0));
+    }
+}
@@ -0,0 +1,87 @@
+package by.vdavdov.service;
+
+import by.vdavdov.model.ContentItem;
+import by.vdavdov.model.ReportStage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void when_journal_is_reopened_then_stages_are_restored() throws Exception {
+        Path file = directory.resolve("journal.dat");
+        try (WorkJournal journal = new WorkJournal(file, Duration.ofHours(1))) {
+            journal.advance(item("r1"), ReportStage.DISCOVERED);
+            journal.advance(item("r1"), ReportStage.CODES_REMOVED);
+            journal.advance(item("r2"), ReportStage.DISCOVERED);
+            journal.advance(item("r2"), ReportStage.CANCELLED);
+        }
+
+        try (WorkJournal journal = new WorkJournal(file, Duration.ofHours(1))) {
+            assertEquals(ReportStage.CODES_REMOVED, journal.stageOf("r1"));
+            assertEquals(ReportStage.CANCELLED, journal.stageOf("r2"));
+            assertNull(journal.stageOf("r3"));
+
+            List<ContentItem> unfinished = journal.unfinished();
+            assertEquals(1, unfinished.size());
+            assertEquals("r1", unfinished.get(0).getId());
+            assertEquals("order-r1", unfinished.get(0).getOrderNumber());
+        }
+    }
+
+    @Test
+    void when_journal_grows_beyond_mapping_then_it_is_remapped() throws Exception {
+        Path file = directory.resolve("journal.dat");
+        try (WorkJournal journal = new WorkJournal(file, Duration.ofHours(1))) {
+            for (int i = 0; i < 30_000; i++) {
+                journal.advance(item("report-" + i), ReportStage.DISCOVERED);
+            }
+        }
+
+        try (WorkJournal journal = new WorkJournal(file, Duration.ofHours(1))) {
+            assertEquals(30_000, journal.unfinished().size());
+        }
+    }
+
+    @Test
+    void when_journal_is_flushed_then_it_is_compacted_and_expired_entries_are_dropped() throws Exception {
+        Path file = directory.resolve("journal.dat");
+        try (WorkJournal journal = new WorkJournal(file, Duration.ofMillis(200))) {
+            journal.advance(item("old"), ReportStage.CANCELLED);
+            Thread.sleep(300);
+            for (int i = 0; i < 20_000; i++) {
+                journal.advance(item("busy"), i % 2 == 0 ? ReportStage.DISCOVERED : ReportStage.CODES_REMOVED);
+            }
+            long grown = journal.size();
+
+            journal.flush();
+
+            assertNull(journal.stageOf("old"));
+            assertEquals(ReportStage.CODES_REMOVED, journal.stageOf("busy"));
+            assertTrue(journal.size() < grown / 1000);
+            journal.advance(item("new"), ReportStage.DISCOVERED);
+        }
+
+        try (WorkJournal journal = new WorkJournal(file, Duration.ofHours(1))) {
+            assertEquals(ReportStage.CODES_REMOVED, journal.stageOf("busy"));
+            assertEquals(ReportStage.DISCOVERED, journal.stageOf("new"));
+            assertNull(journal.stageOf("old"));
+        }
+    }
+
+    private static ContentItem item(String id) {
+        ContentItem item = new ContentItem();
+        item.setId(id);
+        item.setRejectionReason("Повторное нанесение кода");
+        item.setOrderNumber("order-" + id);
+        return item;
+    }
+}
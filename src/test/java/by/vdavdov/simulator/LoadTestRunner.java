@@ -0,0 +1,109 @@
+package by.vdavdov.simulator;
+
+import by.vdavdov.service.CheckReportsService;
+import by.vdavdov.utils.YamlUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Нагрузочный прогон CheckReportsService против {@link MultonSimulator}.
+ * Один запуск getRejectedReports с чистым состоянием во временном каталоге;
+ * печатает отчеты в секунду и количество запросов к API на отчет.
+ * <p>
+ * Запуск:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=by.vdavdov.simulator.LoadTestRunner \
+ *     -Dexec.args="reports=200 codes=5000 duplicates=0.01 full=0.2 concurrency=8 latency=20 jitter=10 errors=0.01"
+ * </pre>
+ * compression=false отключает сжатие ответов, requestCompression=N сжимает тела DELETE от N байт.
+ */
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        int reports = Integer.parseInt(options.getOrDefault("reports", "100"));
+        int codes = Integer.parseInt(options.getOrDefault("codes", "1000"));
+        double duplicates = Double.parseDouble(options.getOrDefault("duplicates", "0.01"));
+        double full = Double.parseDouble(options.getOrDefault("full", "0.2"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        int latency = Integer.parseInt(options.getOrDefault("latency", "0"));
+        int jitter = Integer.parseInt(options.getOrDefault("jitter", "0"));
+        double errors = Double.parseDouble(options.getOrDefault("errors", "0"));
+        boolean compression = Boolean.parseBoolean(options.getOrDefault("compression", "true"));
+        int requestCompression = Integer.parseInt(options.getOrDefault("requestCompression", "0"));
+
+        Path stateDir = Files.createTempDirectory("multon-load");
+        try (MultonSimulator simulator = new MultonSimulator(reports, codes, duplicates, full)) {
+            simulator.setLatency(latency, jitter);
+            simulator.setErrorRate(errors);
+            configure(simulator, stateDir);
+            YamlUtil.processingConcurrency = concurrency;
+            YamlUtil.httpCompression = compression;
+            YamlUtil.httpRequestCompressionMinBytes = requestCompression;
+
+            CheckReportsService service = new CheckReportsService();
+            long started = System.nanoTime();
+            try {
+                service.getRejectedReports();
+            } finally {
+                service.close();
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            long completed = simulator.getReports().stream()
+                    .filter(report -> report.isPartialDuplicate() ? report.isAccepted() : report.isCancelled())
+                    .count();
+            System.out.printf("Отчетов: %d, кодов в отчете: %d, параллельность: %d%n", reports, codes, concurrency);
+            System.out.printf("Время: %.2f с, отчетов в секунду: %.1f, обработано: %d%n",
+                    seconds, reports / seconds, completed);
+            System.out.printf("Запросов к API: %d (%.1f на отчет), внесенных ошибок: %d%n",
+                    simulator.getTotalCalls(), (double) simulator.getTotalCalls() / reports,
+                    simulator.getInjectedErrors());
+            System.out.printf("Передано по сети: ответы %d КБ, запросы %d КБ%n",
+                    simulator.getBytesSent() / 1024, simulator.getBytesReceived() / 1024);
+            simulator.getCalls().forEach((operation, count) ->
+                    System.out.printf("  %-12s %8d  %.2f на отчет%n", operation, count, (double) count / reports));
+        } finally {
+            deleteRecursively(stateDir);
+        }
+    }
+
+    /**
+     * Направляет сервис на имитатор, а файлы состояния - во временный каталог.
+     * Повторы выполняются без пауз, чтобы прогон измерял работу, а не ожидание.
+     */
+    static void configure(MultonSimulator simulator, Path stateDir) {
+        YamlUtil.host = simulator.getHost();
+        YamlUtil.authLogin = "load-test";
+        YamlUtil.authPassword = "load-test";
+        YamlUtil.lastRunFile = stateDir.resolve("last_run.txt").toString();
+        YamlUtil.journalFile = stateDir.resolve("journal.dat").toString();
+        YamlUtil.processedFile = stateDir.resolve("processed_reports.txt").toString();
+        YamlUtil.cacheDirectory = stateDir.resolve("cache").toString();
+        YamlUtil.retryBaseDelayMillis = 1;
+        YamlUtil.retryDeferredDelaySeconds = 0;
+        YamlUtil.datasourceEnabled = false;
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package by.vdavdov.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Локальный имитатор API Мультона для нагрузочных и сквозных тестов.
+ * <p>
+ * Реализует эндпоинты, которые вызывают AuthService, CancelService и CheckReportsService:
+ * авторизацию, поиск отклоненных отчетов, коды отчета, утили, попытки, контент ответа
+ * регулятора, удаление кодов, принятие, отмену и пересчет заказа.
+ * Отчеты генерируются детерминированно: половина с причиной "Повторное нанесение",
+ * часть - "Дубликат кода". Можно добавить задержку ответов и долю ошибок 503.
+ */
+public class MultonSimulator implements AutoCloseable {
+    public static final String PARTIAL_REASON = "Повторное нанесение кода";
+    public static final String FULL_REASON = "Дубликат кода";
+
+    private static final String REPORTS = "/code-usage-processor/api/v2/code-usage-reports";
+    private static final Pattern REPORT_PATH = Pattern.compile(REPORTS + "/([^/]+)(/codes|/cancel)?");
+    private static final Pattern UTILS_PATH = Pattern.compile("/api/utilization-reports/([^/]+)(/attempts)?");
+    private static final Pattern RECALCULATE_PATH = Pattern.compile("/api/manufacturing-order-process/([^/]+)/recalculate");
+    private static final String GTIN = "0104610011500053";
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, SimulatedReport> reportsById = new LinkedHashMap<>();
+    private final Map<String, SimulatedReport> reportsByUtil = new HashMap<>();
+    private final List<SimulatedReport> reports;
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> recalculations = new ConcurrentHashMap<>();
+    private final AtomicInteger failNextGets = new AtomicInteger();
+    private final Map<String, AtomicInteger> failNextGetsByOperation = new ConcurrentHashMap<>();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    private volatile int latencyMillis;
+    private volatile int latencyJitterMillis;
+    private volatile double errorRate;
+
+    /**
+     * @param reportCount    количество отклоненных отчетов
+     * @param codesPerReport количество кодов в каждом отчете
+     * @param duplicateRatio доля кодов, которые регулятор отклонил как повторное нанесение
+     * @param fullDuplicateRatio доля отчетов с причиной "Дубликат кода"
+     */
+    public MultonSimulator(int reportCount, int codesPerReport, double duplicateRatio,
+                           double fullDuplicateRatio) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        List<SimulatedReport> generated = new ArrayList<>(reportCount);
+        for (int i = 0; i < reportCount; i++) {
+            boolean full = random.nextDouble() < fullDuplicateRatio;
+            SimulatedReport report = new SimulatedReport("report-" + i, "util-" + i, "order-" + (i % 10),
+                    full ? FULL_REASON : PARTIAL_REASON);
+            for (int c = 0; c < codesPerReport; c++) {
+                String code = GTIN + "21" + String.format("%013d", (long) i * codesPerReport + c)
+                        + "\u001d93" + Integer.toHexString(0x1000 + random.nextInt(0xefff));
+                report.codes.add(code);
+                if (!full && random.nextDouble() < duplicateRatio) {
+                    report.duplicates.add(code);
+                }
+            }
+            report.originalCodes = List.copyOf(report.codes);
+            generated.add(report);
+            reportsById.put(report.id, report);
+            reportsByUtil.put(report.utilId, report);
+        }
+        this.reports = List.copyOf(generated);
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return адрес для YamlUtil.host
+     */
+    public String getHost() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Задает задержку каждого ответа: {@code latencyMillis} плюс случайно до {@code jitterMillis}.
+     */
+    public void setLatency(int latencyMillis, int jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    /**
+     * Задает долю ответов 503 на все запросы, кроме авторизации.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Следующие {@code count} GET-запросов (кроме авторизации) получат 503.
+     */
+    public void failNextGets(int count) {
+        failNextGets.set(count);
+    }
+
+    /**
+     * Следующие {@code count} GET-запросов операции {@code operation} (например, "utils") получат 503.
+     */
+    public void failNextGets(String operation, int count) {
+        failNextGetsByOperation.put(operation, new AtomicInteger(count));
+    }
+
+    public List<SimulatedReport> getReports() {
+        return reports;
+    }
+
+    /**
+     * @return количество вызовов по операциям, например {"codes": 12, "delete": 3}
+     */
+    public Map<String, Long> getCalls() {
+        Map<String, Long> result = new TreeMap<>();
+        calls.forEach((name, counter) -> result.put(name, counter.sum()));
+        return result;
+    }
+
+    /**
+     * @return сколько раз был запрошен пересчет заказа
+     */
+    public int getRecalculations(String orderNumber) {
+        AtomicInteger count = recalculations.get(orderNumber);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getTotalCalls() {
+        return calls.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return байт в телах ответов, как они переданы по сети (после сжатия)
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return байт в телах запросов, как они переданы по сети (до распаковки)
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String operation = operationOf(method, path);
+            calls.computeIfAbsent(operation, key -> new LongAdder()).increment();
+
+            simulateLatency();
+            if (!operation.equals("auth") && shouldFail(method, operation)) {
+                injectedErrors.increment();
+                send(exchange, 503, "{\"error\":\"Service Unavailable\"}");
+                return;
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            bytesReceived.add(body.length);
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = in.readAllBytes();
+                }
+            }
+            Response response = route(operation, path, query, body);
+            send(exchange, response.status(), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Response route(String operation, String path, Map<String, String> query, byte[] body) throws IOException {
+        return switch (operation) {
+            case "auth" -> json(Map.of("token", token()));
+            case "reports" -> reportsPage(Integer.parseInt(query.getOrDefault("page", "0")),
+                    Integer.parseInt(query.getOrDefault("size", "50")));
+            case "report" -> withReport(REPORT_PATH, path, report -> json(Map.of("orderId", report.orderNumber)));
+            case "codes" -> withReport(REPORT_PATH, path, report -> codesPage(report,
+                    Integer.parseInt(query.getOrDefault("page", "0")),
+                    Integer.parseInt(query.getOrDefault("size", "1000"))));
+            case "delete" -> withReport(REPORT_PATH, path, report -> {
+                List<?> removed = objectMapper.readValue(body, List.class);
+                synchronized (report) {
+                    removed.forEach(report.codes::remove);
+                    report.deleteCalls++;
+                }
+                return new Response(200, "");
+            });
+            case "cancel" -> withReport(REPORT_PATH, path, report -> {
+                report.cancelled = true;
+                return new Response(200, "{}");
+            });
+            case "accept" -> {
+                for (Object utilId : objectMapper.readValue(body, List.class)) {
+                    SimulatedReport report = reportsByUtil.get(String.valueOf(utilId));
+                    if (report != null) {
+                        report.accepted = true;
+                    }
+                }
+                yield new Response(200, "");
+            }
+            case "utils" -> withMatch(UTILS_PATH, path, id -> {
+                SimulatedReport report = reportsById.get(id);
+                if (report == null) {
+                    return new Response(404, "[]");
+                }
+                return json(List.of(Map.of("id", report.utilId)));
+            });
+            case "attempts" -> withMatch(UTILS_PATH, path, utilId -> {
+                SimulatedReport report = reportsByUtil.get(utilId);
+                if (report == null) {
+                    return new Response(404, "{}");
+                }
+                return json(Map.of("content", List.of(
+                        Map.of("created", "2025-03-17T16:40:00Z", "responsePath", "old/" + report.utilId),
+                        Map.of("created", "2025-03-17T16:43:51Z", "responsePath", "latest/" + report.utilId))));
+            });
+            case "content" -> {
+                String responsePath = query.getOrDefault("path", "");
+                SimulatedReport report = reportsByUtil.get(responsePath.substring(responsePath.indexOf('/') + 1));
+                yield report == null ? new Response(404, "{}") : new Response(200, regulatorContent(report));
+            }
+            case "recalculate" -> withMatch(RECALCULATE_PATH, path, order -> {
+                recalculations.computeIfAbsent(order, key -> new AtomicInteger()).incrementAndGet();
+                return new Response(200, "");
+            });
+            default -> new Response(404, "{\"error\":\"Not Found\"}");
+        };
+    }
+
+    private static String operationOf(String method, String path) {
+        if (path.startsWith("/auth/")) {
+            return "auth";
+        }
+        if (path.equals(REPORTS)) {
+            return "reports";
+        }
+        if (path.equals("/code-usage-processor/api/code-usage-reports/accept-reports")) {
+            return "accept";
+        }
+        if (path.startsWith("/regulator-ru-adapter/")) {
+            return "content";
+        }
+        if (path.startsWith("/api/manufacturing-order-process/")) {
+            return "recalculate";
+        }
+        if (path.startsWith("/api/utilization-reports/")) {
+            return path.endsWith("/attempts") ? "attempts" : "utils";
+        }
+        if (path.startsWith(REPORTS + "/")) {
+            if (path.endsWith("/codes")) {
+                return method.equals("DELETE") ? "delete" : "codes";
+            }
+            return path.endsWith("/cancel") ? "cancel" : "report";
+        }
+        return "unknown";
+    }
+
+    private Response reportsPage(int page, int size) throws IOException {
+        int from = Math.min(reports.size(), page * size);
+        int to = Math.min(reports.size(), from + size);
+        List<Map<String, Object>> content = new ArrayList<>();
+        for (SimulatedReport report : reports.subList(from, to)) {
+            content.add(Map.of("id", report.id, "status", "REJECTED",
+                    "rejectionReason", report.reason, "orderNumber", report.orderNumber));
+        }
+        int totalPages = (reports.size() + size - 1) / size;
+        return json(Map.of("content", content, "totalPages", totalPages, "number", page, "last", to >= reports.size()));
+    }
+
+    private Response codesPage(SimulatedReport report, int page, int size) throws IOException {
+        List<Map<String, String>> content = new ArrayList<>();
+        int total;
+        synchronized (report) {
+            total = report.codes.size();
+            for (int i = page * size; i < Math.min(total, (page + 1) * size); i++) {
+                content.add(Map.of("code", report.codes.get(i)));
+            }
+        }
+        int totalPages = (total + size - 1) / size;
+        return json(Map.of("content", content, "totalPages", totalPages, "last", page + 1 >= totalPages));
+    }
+
+    private String regulatorContent(SimulatedReport report) throws IOException {
+        List<Map<String, Object>> cisList = new ArrayList<>();
+        for (String code : report.originalCodes()) {
+            boolean duplicate = report.duplicates.contains(code);
+            cisList.add(Map.of("cis", code.substring(0, code.indexOf('\u001d')),
+                    "code", duplicate ? 1 : 0,
+                    "description", duplicate ? "Повторное нанесение кода" : "Ok"));
+        }
+        String innerJson = objectMapper.writeValueAsString(Map.of("cisList", cisList));
+        String message = "HTTP/1.1 200 OK\nServer: nginx\nContent-Type: application/json; charset=UTF-8\n\n"
+                + objectMapper.writeValueAsString(Map.of("content", innerJson));
+        return objectMapper.writeValueAsString(Map.of("content", message, "size", message.length()));
+    }
+
+    private String token() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        long exp = Instant.now().plusSeconds(3600).getEpochSecond();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"exp\":" + exp + "}").getBytes(StandardCharsets.UTF_8)) + ".sig";
+    }
+
+    private Response withReport(Pattern pattern, String path, ReportHandler handler) throws IOException {
+        return withMatch(pattern, path, id -> {
+            SimulatedReport report = reportsById.get(id);
+            return report == null ? new Response(404, "{}") : handler.handle(report);
+        });
+    }
+
+    private Response withMatch(Pattern pattern, String path, IdHandler handler) throws IOException {
+        Matcher matcher = pattern.matcher(path);
+        return matcher.matches() ? handler.handle(matcher.group(1)) : new Response(404, "{}");
+    }
+
+    private Response json(Object value) throws IOException {
+        return new Response(200, objectMapper.writeValueAsString(value));
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        int delay = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextInt(latencyJitterMillis + 1);
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private boolean shouldFail(String method, String operation) {
+        if (method.equals("GET") && failNextGets.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+            return true;
+        }
+        AtomicInteger operationFailures = failNextGetsByOperation.get(operation);
+        if (method.equals("GET") && operationFailures != null
+                && operationFailures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+            return true;
+        }
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (bytes.length >= GZIP_MIN_BYTES && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        bytesSent.add(bytes.length);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private record Response(int status, String body) {
+    }
+
+    private interface IdHandler {
+        Response handle(String id) throws IOException;
+    }
+
+    private interface ReportHandler {
+        Response handle(SimulatedReport report) throws IOException;
+    }
+
+    /**
+     * Состояние одного отчета в имитаторе.
+     */
+    public static class SimulatedReport {
+        public final String id;
+        public final String utilId;
+        public final String orderNumber;
+        public final String reason;
+        final List<String> codes = new ArrayList<>();
+        final Set<String> duplicates = new HashSet<>();
+        private List<String> originalCodes;
+        volatile boolean cancelled;
+        volatile boolean accepted;
+        int deleteCalls;
+
+        SimulatedReport(String id, String utilId, String orderNumber, String reason) {
+            this.id = id;
+            this.utilId = utilId;
+            this.orderNumber = orderNumber;
+            this.reason = reason;
+        }
+
+        public boolean isPartialDuplicate() {
+            return reason.equals(PARTIAL_REASON);
+        }
+
+        public synchronized List<String> remainingCodes() {
+            return List.copyOf(codes);
+        }
+
+        public Set<String> getDuplicates() {
+            return Collections.unmodifiableSet(duplicates);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        public synchronized int getDeleteCalls() {
+            return deleteCalls;
+        }
+
+        private List<String> originalCodes() {
+            return originalCodes;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package by.vdavdov.simulator;
+
+import by.vdavdov.service.CheckReportsService;
+import by.vdavdov.utils.YamlUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatedRunTest {
+    private Path stateDir;
+    private String host;
+    private String lastRunFile;
+    private String journalFile;
+    private String processedFile;
+    private String cacheDirectory;
+    private int retryBaseDelayMillis;
+    private int retryDeferredDelaySeconds;
+    private int processingConcurrency;
+    private int circuitFailureThreshold;
+    private int circuitOpenSeconds;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stateDir = Files.createTempDirectory("multon-e2e");
+        host = YamlUtil.host;
+        lastRunFile = YamlUtil.lastRunFile;
+        journalFile = YamlUtil.journalFile;
+        processedFile = YamlUtil.processedFile;
+        cacheDirectory = YamlUtil.cacheDirectory;
+        retryBaseDelayMillis = YamlUtil.retryBaseDelayMillis;
+        retryDeferredDelaySeconds = YamlUtil.retryDeferredDelaySeconds;
+        processingConcurrency = YamlUtil.processingConcurrency;
+        circuitFailureThreshold = YamlUtil.circuitFailureThreshold;
+        circuitOpenSeconds = YamlUtil.circuitOpenSeconds;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        YamlUtil.host = host;
+        YamlUtil.lastRunFile = lastRunFile;
+        YamlUtil.journalFile = journalFile;
+        YamlUtil.processedFile = processedFile;
+        YamlUtil.cacheDirectory = cacheDirectory;
+        YamlUtil.retryBaseDelayMillis = retryBaseDelayMillis;
+        YamlUtil.retryDeferredDelaySeconds = retryDeferredDelaySeconds;
+        YamlUtil.processingConcurrency = processingConcurrency;
+        YamlUtil.circuitFailureThreshold = circuitFailureThreshold;
+        YamlUtil.circuitOpenSeconds = circuitOpenSeconds;
+        LoadTestRunner.deleteRecursively(stateDir);
+    }
+
+    @Test
+    void when_run_against_simulator_then_all_reports_processed() throws Exception {
+        try (MultonSimulator simulator = new MultonSimulator(30, 300, 0.05, 0.3)) {
+            simulator.failNextGets(2);
+            LoadTestRunner.configure(simulator, stateDir);
+            YamlUtil.processingConcurrency = 4;
+
+            CheckReportsService service = new CheckReportsService();
+            try {
+                service.getRejectedReports();
+            } finally {
+                service.close();
+            }
+
+            assertEquals(2, simulator.getInjectedErrors());
+            for (MultonSimulator.SimulatedReport report : simulator.getReports()) {
+                if (report.isPartialDuplicate()) {
+                    assertTrue(report.isAccepted(), report.id);
+                    for (String duplicate : report.getDuplicates()) {
+                        assertFalse(report.remainingCodes().contains(duplicate), report.id);
+                    }
+                    assertEquals(300 - report.getDuplicates().size(), report.remainingCodes().size(), report.id);
+                    assertTrue(simulator.getRecalculations(report.orderNumber) > 0, report.id);
+                } else {
+                    assertTrue(report.isCancelled(), report.id);
+                }
+            }
+            assertTrue(Files.exists(Path.of(YamlUtil.lastRunFile)));
+        }
+    }
+
+    @Test
+    void when_burst_of_errors_opens_circuit_then_deferred_reports_complete_in_same_run() throws Exception {
+        try (MultonSimulator simulator = new MultonSimulator(10, 50, 0.05, 0.0)) {
+            simulator.failNextGets("utils", 2);
+            LoadTestRunner.configure(simulator, stateDir);
+            // Отчеты по одному: обе ошибки подряд размыкают цепь, и остальные отчеты откладываются
+            YamlUtil.processingConcurrency = 1;
+            YamlUtil.circuitFailureThreshold = 2;
+            YamlUtil.circuitOpenSeconds = 1;
+
+            CheckReportsService service = new CheckReportsService();
+            try {
+                service.getRejectedReports();
+            } finally {
+                service.close();
+            }
+
+            assertEquals(2, simulator.getInjectedErrors());
+            for (MultonSimulator.SimulatedReport report : simulator.getReports()) {
+                assertTrue(report.isAccepted(), report.id);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package by.vdavdov.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+    private static final long LATENCY = 1_000_000;
+
+    @Test
+    void when_limit_is_used_with_stable_latency_then_it_grows_up_to_max() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10, 2.0);
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, LATENCY);
+        }
+        assertTrue(limiter.getLimit() > 2);
+
+        for (int i = 0; i < 200; i++) {
+            runWindow(limiter, LATENCY);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void when_window_is_overloaded_then_limit_is_halved_once() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(16, 1, 64, 2.0);
+        long[] tickets = new long[16];
+        for (int i = 0; i < tickets.length; i++) {
+            tickets[i] = limiter.acquire();
+        }
+        for (long ticket : tickets) {
+            limiter.release(ticket, LATENCY, true);
+        }
+        assertEquals(8, limiter.getLimit());
+
+        // Запрос, отправленный после снижения, снижает лимит снова
+        limiter.release(limiter.acquire(), LATENCY, true);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void when_limits_are_out_of_range_then_they_are_clamped() throws Exception {
+        assertEquals(5, new AdaptiveLimiter(100, 1, 5, 2.0).getLimit());
+        assertEquals(3, new AdaptiveLimiter(0, 3, 5, 2.0).getLimit());
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 2, 8, 2.0);
+        for (int i = 0; i < 10; i++) {
+            limiter.release(limiter.acquire(), LATENCY, true);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    /**
+     * Занимает весь текущий лимит и освобождает его с заданной задержкой.
+     */
+    private static void runWindow(AdaptiveLimiter limiter, long latencyNanos) throws InterruptedException {
+        int limit = limiter.getLimit();
+        long[] tickets = new long[limit];
+        for (int i = 0; i < limit; i++) {
+            tickets[i] = limiter.acquire();
+        }
+        for (long ticket : tickets) {
+            limiter.release(ticket, latencyNanos, false);
+        }
+    }
+}
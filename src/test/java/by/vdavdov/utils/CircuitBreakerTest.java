@@ -0,0 +1,67 @@
+package by.vdavdov.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void when_failures_reach_threshold_then_reject_requests() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60_000);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void when_open_time_passed_then_allow_single_trial() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void when_trial_fails_then_open_again() {
+        CircuitBreaker breaker = new CircuitBreaker(5, 0);
+        for (int i = 0; i < 5; i++) {
+            breaker.onFailure();
+        }
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void when_trial_is_interrupted_then_next_trial_is_allowed() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.release();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void when_circuit_is_open_then_remaining_open_time_is_reported() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60_000);
+        assertEquals(0, breaker.remainingOpenMillis());
+        breaker.onFailure();
+        long remaining = breaker.remainingOpenMillis();
+        assertTrue(remaining > 59_000 && remaining <= 60_000, String.valueOf(remaining));
+        breaker.onSuccess();
+        assertEquals(0, breaker.remainingOpenMillis());
+    }
+}
@@ -0,0 +1,41 @@
+package by.vdavdov.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeIndexTest {
+
+    @Test
+    void when_key_matches_then_return_full_code() {
+        CodeIndex.Builder builder = new CodeIndex.Builder();
+        builder.add("01046100115000532150FLfHxnWiqF%\u001d93dGVz");
+        builder.add("01046100115000532150GCgOFD(l_/Z\u001d93abcd");
+        CodeIndex index = builder.build();
+
+        int found = index.find("01046100115000532150FLfHxnWiqF%");
+        assertTrue(found >= 0);
+        assertEquals("01046100115000532150FLfHxnWiqF%\u001d93dGVz", index.code(found));
+        assertEquals("01046100115000532150GCgOFD(l_/Z\u001d93abcd",
+                index.code(index.find("01046100115000532150GCgOFD(l_/Z\u001d93other")));
+        assertEquals(-1, index.find("01046100115000532150FLfHxnWiqF"));
+    }
+
+    @Test
+    void when_many_codes_then_every_code_is_found() {
+        CodeIndex.Builder builder = new CodeIndex.Builder();
+        for (int i = 0; i < 100_000; i++) {
+            builder.add("0104610011500053215" + i + "\u001d93" + i);
+        }
+        builder.add("0104610011500053215" + 5 + "\u001d93duplicate");
+        builder.add("0104610011500053215кириллица\u001d93x");
+        CodeIndex index = builder.build();
+
+        assertEquals(100_001, index.size());
+        for (int i = 0; i < 100_000; i += 7) {
+            assertEquals("0104610011500053215" + i + "\u001d93" + i, index.code(index.find("0104610011500053215" + i)));
+        }
+        assertEquals("0104610011500053215кириллица\u001d93x", index.code(index.find("0104610011500053215кириллица")));
+        assertEquals(-1, index.find("0104610011500053215-1"));
+    }
+}
@@ -0,0 +1,32 @@
+package by.vdavdov.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogPayloadTest {
+    private final int payloadBytes = YamlUtil.loggingPayloadBytes;
+    private final double sampleRate = YamlUtil.loggingPayloadSampleRate;
+
+    @AfterEach
+    void restore() {
+        YamlUtil.loggingPayloadBytes = payloadBytes;
+        YamlUtil.loggingPayloadSampleRate = sampleRate;
+    }
+
+    @Test
+    void when_payload_exceeds_budget_then_truncate_by_utf8_bytes() {
+        YamlUtil.loggingPayloadBytes = 5;
+        assertEquals("abc", LogPayload.of("abc").toString());
+        assertEquals("abcde...(+2 символов)", LogPayload.of("abcdefg").toString());
+        // Кириллица - два байта на символ
+        assertEquals("Ок...(+2 символов)", LogPayload.truncate("ОкОк"));
+    }
+
+    @Test
+    void when_sample_rate_is_zero_then_write_only_size() {
+        YamlUtil.loggingPayloadSampleRate = 0;
+        assertEquals("<7 символов, не записано>", LogPayload.of("abcdefg").toString());
+    }
+}
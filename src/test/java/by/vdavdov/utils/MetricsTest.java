@@ -0,0 +1,40 @@
+package by.vdavdov.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @AfterEach
+    void clear() {
+        Metrics.clear();
+    }
+
+    @Test
+    void when_values_recorded_then_quantiles_within_bucket_precision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000, histogram.quantile(0.5), 50_000 * 0.07);
+        assertEquals(99_000, histogram.quantile(0.99), 99_000 * 0.07);
+        assertTrue(histogram.quantile(1.0) >= 100_000);
+    }
+
+    @Test
+    void when_scraped_then_prometheus_text_format() {
+        Metrics.counter("multon_reports_total", "reason", "full_duplicate").add(3);
+        Metrics.histogram("multon_step_seconds", "step", "codes").record(2_000_000);
+        Metrics.gauge("multon_run_pages", () -> 7);
+
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# TYPE multon_reports_total counter\nmulton_reports_total{reason=\"full_duplicate\"} 3\n"));
+        assertTrue(text.contains("multon_step_seconds_count{step=\"codes\"} 1\n"));
+        assertTrue(text.contains("multon_step_seconds_sum{step=\"codes\"} 2\n"));
+        assertTrue(text.contains("multon_step_seconds{step=\"codes\",quantile=\"0.5\"} "));
+        assertTrue(text.contains("multon_run_pages 7\n"));
+    }
+}